@@ -0,0 +1,255 @@
+package engine;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import christmas.ChristmasGame;
+
+/**
+ * Times the think and update loops of GenericGameRunner against the loops it
+ * replaced, over the object mix of the real game.
+ *
+ * First the benchmark plays ChristmasGame headless for a while, with scripted
+ * input, and counts the awake objects of each class once every second of game
+ * time. The game's own objects can't be stepped outside of the game, since
+ * their steps run the physics and add other objects, so the timed loops step
+ * StandInObjects instead: one copy of the class for each class in the mix, with
+ * the average number of objects of that class, times the scale. The loops are:
+ * <ul>
+ * <li>hash set: the runner before objects were split by class. Every object
+ * thinks from one HashSet, then the set is copied and every object updates.
+ * <li>shared loop: the objects split by class, but stepped by one loop, so
+ * each call still sees every class.
+ * <li>steppers: the runner now. Each class is stepped by its own copy of
+ * ClassStepper.
+ * </ul>
+ * The loops take turns, so each one runs under the same conditions. The first
+ * rounds are warm-up and aren't counted.
+ *
+ * Run it with the resource directory, and optionally the scale:
+ * java -cp bin:lib/* engine.RunnerBenchmark resource 100
+ */
+public class RunnerBenchmark {
+	private static final int DEFAULT_SCALE = 100;
+	private static final int CANVAS_WIDTH = 1920;
+	private static final int CANVAS_HEIGHT = 1080;
+	private static final int STEPS_PER_SECOND = 60;
+	private static final long STEP_NANOS =
+			GenericGameRunner.NANOS_PER_SECOND / STEPS_PER_SECOND;
+	private static final int MIX_SECONDS = 120;
+	//the game is restarted this often, in case the player died
+	private static final int RESTART_SECONDS = 30;
+	private static final long SEED = 42;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 15;
+	private static final int STEPS_PER_ROUND = 200;
+	private static final int ELAPSED_TIME = 16;
+	
+	//counts the objects that ask for another update, like the runner's queue
+	private static final class CountingQueue
+			implements ObjectStepper.UpdateQueue {
+		int count;
+		
+		@Override
+		public void updateAgain(Collection<GameObject> objects) {
+			count += objects.size();
+		}
+	}
+	
+	private final GameObject[][] classes;
+	private final ObjectStepper[] steppers;
+	private final Set<GameObject> hashSet;
+	private final CountingQueue queue = new CountingQueue();
+	private int time;
+	
+	private RunnerBenchmark(Map<Class<?>, Integer> mix, int scale)
+			throws ReflectiveOperationException {
+		ClassCopier copier = new ClassCopier(StandInObject.class);
+		classes = new GameObject[mix.size()][];
+		steppers = new ObjectStepper[mix.size()];
+		List<GameObject> all = new ArrayList<>();
+		int c = 0;
+		for(int count : mix.values()) {
+			Class<?> type = copier.newCopy();
+			if(type == StandInObject.class)
+				throw new IllegalStateException(
+						"Couldn't copy StandInObject's class file");
+			GameObject[] objects = new GameObject[count * scale];
+			for(int i = 0; i < objects.length; i++)
+				objects[i] = (GameObject)type.getConstructor().newInstance();
+			all.addAll(Arrays.asList(objects));
+			classes[c] = objects;
+			steppers[c] = GenericGameRunner.stepperFor(type);
+			c++;
+		}
+		hashSet = new HashSet<>(all);
+		time = 0;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1) {
+			System.err.println(
+					"Usage: RunnerBenchmark <resource directory> [scale]");
+			System.exit(1);
+		}
+		int scale = args.length > 1 ? Integer.parseInt(args[1])
+				: DEFAULT_SCALE;
+		
+		Map<Class<?>, Integer> mix = measureMix(Paths.get(args[0]));
+		int total = 0;
+		System.out.println("Awake objects in the game, on average:");
+		for(Map.Entry<Class<?>, Integer> e : mix.entrySet()) {
+			System.out.printf("  %5d %s%n", e.getValue(),
+					e.getKey().getName());
+			total += e.getValue();
+		}
+		System.out.println("Stepping " + total * scale + " objects of "
+				+ mix.size() + " classes (scale " + scale + ")");
+		
+		RunnerBenchmark bench = new RunnerBenchmark(mix, scale);
+		String[] names = { "hash set", "shared loop", "steppers" };
+		long[][] times = new long[names.length][ROUNDS];
+		for(int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			for(int loop = 0; loop < names.length; loop++) {
+				long start = System.nanoTime();
+				for(int s = 0; s < STEPS_PER_ROUND; s++)
+					bench.step(loop);
+				long elapsed = System.nanoTime() - start;
+				if(round >= WARMUP_ROUNDS)
+					times[loop][round - WARMUP_ROUNDS] = elapsed;
+			}
+		}
+		
+		System.out.println("Median time per step:");
+		for(int loop = 0; loop < names.length; loop++) {
+			long[] t = times[loop];
+			Arrays.sort(t);
+			double micros = t[ROUNDS / 2] / (double)STEPS_PER_ROUND / 1000;
+			System.out.printf("  %-12s %10.1f us%n", names[loop], micros);
+		}
+		System.out.println("(checksum " + bench.checksum() + ")");
+	}
+	
+	/**
+	 * Play the game headless and count its awake objects by class.
+	 * @param resources the game's resource directory
+	 * @return the average number of objects of each class, in the order the
+	 * classes were first seen
+	 */
+	private static Map<Class<?>, Integer> measureMix(Path resources) {
+		ChristmasGame game = new ChristmasGame(resources);
+		game.width = CANVAS_WIDTH;
+		game.height = CANVAS_HEIGHT;
+		VirtualClock clock = new VirtualClock();
+		game.runHeadless(clock, null);
+		SplittableRandom random = new SplittableRandom(SEED);
+		
+		Map<Class<?>, Long> totals = new LinkedHashMap<>();
+		List<GameObject> awake = new ArrayList<>();
+		int samples = 0;
+		for(int second = 0; second < MIX_SECONDS; second++) {
+			if(second % RESTART_SECONDS == 0)
+				game.restartForReplay(random.nextLong());
+			for(int s = 0; s < STEPS_PER_SECOND; s++) {
+				playerInput(game.runner.getInput(), random);
+				clock.advance(STEP_NANOS);
+				game.simulate();
+			}
+			
+			awake.clear();
+			((GenericGameRunner)game.runner).collectAwakeObjects(awake);
+			for(GameObject o : awake) {
+				Long count = totals.get(o.getClass());
+				totals.put(o.getClass(), count == null ? 1 : count + 1);
+			}
+			samples++;
+		}
+		
+		Map<Class<?>, Integer> mix = new LinkedHashMap<>();
+		for(Map.Entry<Class<?>, Long> e : totals.entrySet())
+			mix.put(e.getKey(), (int)Math.max(
+					Math.round(e.getValue() / (double)samples), 1));
+		return mix;
+	}
+	
+	//flap now and then, and drop presents
+	private static void playerInput(Input input, SplittableRandom random) {
+		if(random.nextInt(30) == 0)
+			input.post(InputEvent.Type.KEY_PRESSED, (char)0xFFFF, 38);
+		if(random.nextInt(30) == 0)
+			input.post(InputEvent.Type.KEY_RELEASED, (char)0xFFFF, 38);
+		if(random.nextInt(20) == 0)
+			input.post(InputEvent.Type.KEY_PRESSED, ' ', 32);
+	}
+	
+	private void step(int loop) {
+		switch(loop) {
+		case 0:
+			stepHashSet(time, ELAPSED_TIME);
+			break;
+		case 1:
+			stepSharedLoop(time, ELAPSED_TIME);
+			break;
+		default:
+			stepSteppers(time, ELAPSED_TIME);
+			break;
+		}
+		time += ELAPSED_TIME;
+	}
+	
+	//the loops of the runner before objects were split by class
+	private void stepHashSet(int time, int elapsedTime) {
+		for(GameObject o : hashSet)
+			o.think(time, elapsedTime);
+		Set<GameObject> update = new HashSet<>(hashSet);
+		for(GameObject o : update) {
+			Collection<GameObject> again = o.update();
+			if(again != null)
+				queue.updateAgain(again);
+		}
+	}
+	
+	//the objects split by class, but with every class at the same calls
+	private void stepSharedLoop(int time, int elapsedTime) {
+		for(GameObject[] objects : classes) {
+			for(int i = 0; i < objects.length; i++)
+				objects[i].think(time, elapsedTime);
+		}
+		for(GameObject[] objects : classes) {
+			for(int i = 0; i < objects.length; i++) {
+				Collection<GameObject> again = objects[i].update();
+				if(again != null)
+					queue.updateAgain(again);
+			}
+		}
+	}
+	
+	//the loops of the runner now
+	private void stepSteppers(int time, int elapsedTime) {
+		for(int c = 0; c < classes.length; c++)
+			steppers[c].think(classes[c], classes[c].length, time,
+					elapsedTime);
+		for(int c = 0; c < classes.length; c++)
+			steppers[c].update(classes[c], classes[c].length, queue);
+	}
+	
+	private double checksum() throws IllegalAccessException,
+			InvocationTargetException, NoSuchMethodException {
+		double sum = queue.count;
+		for(GameObject[] objects : classes) {
+			for(GameObject o : objects)
+				sum += (Float)o.getClass().getMethod("getChecksum").invoke(o);
+		}
+		return sum;
+	}
+}
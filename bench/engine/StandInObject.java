@@ -0,0 +1,63 @@
+package engine;
+
+import java.util.Collection;
+
+/**
+ * A game object for RunnerBenchmark. The benchmark loads a separate copy of
+ * this class for each class in the game's object mix, so the loops it times
+ * see as many classes as the game does. Its think() and update() do about as
+ * much as a moving sprite's.
+ *
+ * Copies have their own class loaders, so like ClassStepper, this has to stay
+ * a public top-level class that only uses public members.
+ */
+public final class StandInObject implements GameObject {
+	private float x, y;
+	private float velocityX, velocityY;
+	private float nextX, nextY;
+	private boolean bounced;
+	
+	public StandInObject() {
+		x = 0;
+		y = 0;
+		velocityX = 0.1f;
+		velocityY = 0.05f;
+	}
+	
+	@Override
+	public void start(int time) {
+	}
+	
+	@Override
+	public void think(int currentTime, int elapsedTime) {
+		nextX = x + velocityX * elapsedTime;
+		nextY = y + velocityY * elapsedTime;
+		bounced = nextX < 0 || nextX > 1920 || nextY < 0 || nextY > 1080;
+	}
+	
+	@Override
+	public Collection<GameObject> update() {
+		if(bounced) {
+			velocityX = -velocityX;
+			velocityY = -velocityY;
+		} else {
+			x = nextX;
+			y = nextY;
+		}
+		return null;
+	}
+	
+	@Override
+	public boolean readyToDelete() {
+		return false;
+	}
+	
+	/**
+	 * Get a value that depends on every step, so the JIT can't drop the
+	 * steps as unused.
+	 * @return the sum of the coordinates
+	 */
+	public float getChecksum() {
+		return x + y;
+	}
+}
@@ -3,14 +3,35 @@ package christmas;
 import java.util.Collection;
 
 import engine.*;
+import engine.graphics.Drawable;
 import engine.graphics.Effect;
 import processing.core.*;
 
 public class BackgroundImage implements Effect {
+	// the image stretched over the screen. A new one is made when the image
+	// changes, since it can be drawn while the next step runs.
+	private static class Picture implements Drawable {
+		private final PImage image;
+		private final float width;
+		private final float height;
+		
+		Picture(PImage image, float width, float height) {
+			this.image = image;
+			this.width = width;
+			this.height = height;
+		}
+		
+		@Override
+		public void draw(PGraphics g) {
+			g.image(image, 0, 0, width, height);
+		}
+	}
+	
 	private ChristmasGame game;
 	private final ResourceManager resource;
 	private boolean narwhal;
 	private PImage image;
+	private Picture picture;
 	
 	private float width;
 	private float height;
@@ -23,6 +44,7 @@ public class BackgroundImage implements Effect {
 		
 		width = runner.getApplet().getCanvasWidth();
 		height = runner.getApplet().getCanvasHeight();
+		picture = new Picture(image, width, height);
 	}
 	
 	@Override
@@ -33,6 +55,7 @@ public class BackgroundImage implements Effect {
 		if(game.narwhalMode && !narwhal) {
 			narwhal = true;
 			image = resource.getImage("narwhal");
+			picture = new Picture(image, width, height);
 		}
 	}
 	
@@ -44,9 +67,14 @@ public class BackgroundImage implements Effect {
 		return false;
 	}
 	
+	@Override
+	public Drawable getDrawable() {
+		return picture;
+	}
+	
 	@Override
 	public void draw(PGraphics g) {
-		g.image(image, 0, 0, width, height);
+		picture.draw(g);
 	}
 	
 	@Override
@@ -142,6 +142,12 @@ public class Chimney extends ImageSprite {
 		}
 	}
 	
+	@Override
+	public boolean canThinkInParallel() {
+		// think() uses the Box2D world, which isn't thread-safe
+		return false;
+	}
+	
 	private void makeBody(ResourceManager resource) {
 		float width = super.getWidth();
 		float height = super.getHeight();
@@ -178,6 +184,13 @@ public class Chimney extends ImageSprite {
 		bottomFixture.setUserData(game);
 	}
 	
+	@Override
+	public void reset() {
+		super.reset();
+		body = null;
+		move = false;
+	}
+	
 	public void stopMoving() {
 		move = false;
 		box2d.destroyBody(body);
@@ -2,15 +2,17 @@ package christmas;
 
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
 import processing.core.*;
 import engine.*;
 import engine.sound.Sound;
 import shiffman.box2d.*;
 
 public class ChristmasGame extends GameApplet {
-	private static Path RESOURCE_DIRECTORY;
 	private static final String CONFIG_FILE_NAME = "resource.txt";
-	private static Path CONFIG_FILE;
+	private final Path resourceDirectory;
+	private final Path configFile;
 
 	enum GameScreen {
 		START, GAME, DEAD
@@ -19,6 +21,8 @@ public class ChristmasGame extends GameApplet {
 	// the current game state
 	GameScreen currentScreen = GameScreen.START;
 	int gameFrame = -1;
+	boolean loadingStarted = false;
+	boolean splashScreenShown = false;
 	boolean gameSetup = false;
 	boolean gameInitialized = false;
 	PImage splashScreen;
@@ -27,21 +31,14 @@ public class ChristmasGame extends GameApplet {
 	boolean speedRound = false;
 	int narwhalModePoints;
 	boolean narwhalMode = false;
-	int lastTime;
-
 	int points;
 	int deadMessage = -1;
+	SplittableRandom random;
 
 	Box2DProcessing box2d;
 
-	boolean leftPressed;
-	boolean rightPressed;
-
 	Sound mainMusic;
 	Sound santaSound;
-	float santaSoundMinDelay;
-	float santaSoundMaxDelay;
-	int nextSantaSoundTime;
 	Sound rainSound;
 	Sound pointSound;
 
@@ -49,21 +46,193 @@ public class ChristmasGame extends GameApplet {
 	SleighFollower sleigh;
 	HouseGroup houses;
 
-	int minChimneyWait;
-	int maxChimneyWait;
-	int nextChimneyTime;
 	List<Chimney> chimneys;
 
-	boolean jumpWasPressed;
+	// made again for each game, since the objects use that game's Box2D world
+	ObjectPool<Present> presentPool;
+	ObjectPool<Chimney> chimneyPool;
+	ObjectPool<PointText> pointTextPool;
+
+	private final Runnable spawnChimney = new Runnable() {
+		@Override
+		public void run() {
+			spawnChimney();
+		}
+	};
+
+	private final Runnable playSantaSound = new Runnable() {
+		@Override
+		public void run() {
+			santaSound.restart();
+		}
+	};
+
+	private final InputListener gameInput = new InputListener() {
+		@Override
+		public void input(InputEvent e, Input input) {
+			if (currentScreen != GameScreen.GAME)
+				return;
+			int code = e.getKeyCode();
+			if (e.getType() == InputEvent.Type.KEY_PRESSED) {
+				// keys repeat while they are held, but only jump once
+				if (code == UP && !input.isKeyDown(UP))
+					mainReindeer.jump();
+				if (code == LEFT)
+					mainReindeer.fly(-1);
+				if (code == RIGHT)
+					mainReindeer.fly(1);
+				if (e.getKey() == ' ')
+					sleigh.launchPresent();
+			} else {
+				if (code == LEFT)
+					mainReindeer.fly(input.isKeyDown(RIGHT) ? 1 : 0);
+				if (code == RIGHT)
+					mainReindeer.fly(input.isKeyDown(LEFT) ? -1 : 0);
+			}
+		}
+	};
+
+	// steps the physics world with each step of the runner, so physics runs
+	// on game time and replays the same way
+	private final GameObject physics = new GameObject() {
+		@Override
+		public void start(int time) {
+		}
+
+		@Override
+		public void think(int currentTime, int elapsedTime) {
+			box2d.step(runner.getStepNanos() / 1000000000f, 10, 8);
+			box2d.world.clearForces();
+		}
+
+		@Override
+		public Collection<GameObject> update() {
+			return null;
+		}
+
+		@Override
+		public boolean readyToDelete() {
+			return false;
+		}
+
+		@Override
+		public boolean canThinkInParallel() {
+			return false;
+		}
+	};
+
+	// loading runs in the background while the splash screen is shown
+	private final Callable<PImage> loadSplashScreen = new Callable<PImage>() {
+		@Override
+		public PImage call() {
+			return loadImage(resourceDirectory.resolve("splashScreen.png")
+					.toString());
+		}
+	};
+
+	private final JobCallback<PImage> splashScreenLoaded =
+			new JobCallback<PImage>() {
+		@Override
+		public void finished(PImage result) {
+			System.out.println("Splash screen loaded.");
+			splashScreen = result;
+		}
+
+		@Override
+		public void failed(Throwable error) {
+			throw new RuntimeException("Could not load the splash screen",
+					error);
+		}
+	};
+
+	// everything loadGame() loads, which is only given to the game on the
+	// main thread
+	private static class LoadedGame {
+		final Globals globals;
+		final PImage deadScreen;
+		final Sound mainMusic;
+		final Sound rainSound;
+		final Sound santaSound;
+		final int speedRoundPoints;
+		final int narwhalModePoints;
+
+		LoadedGame(Globals globals, PImage deadScreen, Sound mainMusic,
+				Sound rainSound, Sound santaSound, int speedRoundPoints,
+				int narwhalModePoints) {
+			this.globals = globals;
+			this.deadScreen = deadScreen;
+			this.mainMusic = mainMusic;
+			this.rainSound = rainSound;
+			this.santaSound = santaSound;
+			this.speedRoundPoints = speedRoundPoints;
+			this.narwhalModePoints = narwhalModePoints;
+		}
+	}
+
+	private final Callable<LoadedGame> loadGame = new Callable<LoadedGame>() {
+		@Override
+		public LoadedGame call() {
+			return loadGame();
+		}
+	};
+
+	private final JobCallback<LoadedGame> gameLoaded =
+			new JobCallback<LoadedGame>() {
+		@Override
+		public void finished(LoadedGame result) {
+			setLoadedGame(result);
+			startGlobalSounds();
+			gameSetup = true;
+		}
+
+		@Override
+		public void failed(Throwable error) {
+			throw new RuntimeException("Could not load the game", error);
+		}
+	};
+
+	private final Supplier<Present> newPresent = new Supplier<Present>() {
+		@Override
+		public Present get() {
+			return new Present(runner, box2d, ChristmasGame.this);
+		}
+	};
+
+	private final Supplier<Chimney> newChimney = new Supplier<Chimney>() {
+		@Override
+		public Chimney get() {
+			return new Chimney(runner, box2d, ChristmasGame.this);
+		}
+	};
+
+	private final Supplier<PointText> newPointText =
+			new Supplier<PointText>() {
+		@Override
+		public PointText get() {
+			return new PointText(runner, getCanvasHeight());
+		}
+	};
+
+	private final DeleteListener chimneyDeleted = new DeleteListener() {
+		@Override
+		public void readyToDelete(GameObject o) {
+			chimneys.remove(o);
+		}
+	};
 
 	public static void main(String[] args) {
 		if(args.length < 1) {
 			System.err.println("Please specify the resource directory.");
 		}
-		RESOURCE_DIRECTORY = Paths.get(args[0]);
-		CONFIG_FILE = Paths.get(args[0], CONFIG_FILE_NAME);
 		
-		GameApplet.startApplet(args, ChristmasGame.class);
+		GameApplet.startApplet(args, new ChristmasGame(Paths.get(args[0])));
+	}
+
+	public ChristmasGame(Path resourceDirectory) {
+		this.resourceDirectory = resourceDirectory;
+		configFile = resourceDirectory.resolve(CONFIG_FILE_NAME);
+		chimneys = new ArrayList<>();
+		setCanvas(1920, 1080);
 	}
 
 	protected void setMainReindeer(Reindeer deer) {
@@ -79,6 +248,8 @@ public class ChristmasGame extends GameApplet {
 	}
 
 	protected void die() {
+		if (currentScreen != GameScreen.DEAD)
+			deadMessage = random.nextInt(9);
 		currentScreen = GameScreen.DEAD;
 		houses.stopMoving();
 		for (Chimney c : chimneys) {
@@ -86,15 +257,30 @@ public class ChristmasGame extends GameApplet {
 		}
 	}
 
+	private void spawnChimney() {
+		if (currentScreen != GameScreen.GAME)
+			return;
+		Chimney chimney = chimneyPool.obtain();
+		group.addSprite(chimney);
+		runner.addObject(chimney);
+		chimneys.add(chimney);
+		chimney.addDeleteListener(chimneyDeleted);
+	}
+
 	protected HouseGroup getHouses() {
 		return houses;
 	}
 
+	protected ObjectPool<Present> getPresentPool() {
+		return presentPool;
+	}
+
 	protected void addPoints(int amount, float xPos, float yPos) {
 		points += amount;
 		if (amount > 0)
 			pointSound.restart();
-		PointText text = new PointText(amount, xPos, yPos, getCanvasHeight());
+		PointText text = pointTextPool.obtain();
+		text.show(amount, xPos, yPos);
 		runner.addObject(text);
 		group.addSprite(text);
 
@@ -119,81 +305,61 @@ public class ChristmasGame extends GameApplet {
 			}
 			break;
 		case GAME:
-			if (keyCode == UP) { // jump
-				if (!jumpWasPressed) {
-					jumpWasPressed = true;
-					mainReindeer.jump();
-				}
-			}
-			if (keyCode == LEFT) {
-				leftPressed = true;
-				mainReindeer.fly(-1);
-			}
-			if (keyCode == RIGHT) {
-				rightPressed = true;
-				mainReindeer.fly(1);
-			}
-			if (key == ' ') {
-				sleigh.launchPresent();
-			}
+			// handled by gameInput at the start of the next step
 			break;
 		}
 	}
 
-	@Override
-	public void keyReleased() {
-		switch (currentScreen) {
-		case START:
-			break;
-		case GAME:
-			if (keyCode == UP) { // jump
-				jumpWasPressed = false;
-			}
-			if (keyCode == LEFT) {
-				leftPressed = false;
-				mainReindeer.fly(rightPressed ? 1 : 0);
-			}
-			if (keyCode == RIGHT) {
-				rightPressed = false;
-				mainReindeer.fly(leftPressed ? -1 : 0);
-			}
-			break;
-		case DEAD:
+	private void setupGame() {
+		setLoadedGame(loadGame());
+		startGlobalSounds();
+	}
 
-			break;
-		}
+	/**
+	 * Load resources and sounds. This doesn't change the game, so it can be
+	 * done on another thread. The result is given to the game with
+	 * setLoadedGame() on the main thread.
+	 */
+	private LoadedGame loadGame() {
+		Globals globals = loadGlobal(resourceDirectory, configFile);
+		ResourceManager resource = globals.getRunner().getResources();
+		GameRunner global = globals.getGlobalRunner();
+
+		// setup sounds. only happens once
+		Sound music = resource.getSound("mainMusic", global);
+		music.setVolume(resource.getFloat("mainMusicVolume"));
+		Sound rain = resource.getSound("rainSound", global);
+		rain.setVolume(resource.getFloat("rainVolume"));
+		Sound santa = resource.getSound("santaSound", global);
+		santa.setVolume(resource.getFloat("santaSoundVolume"));
+
+		return new LoadedGame(globals, resource.getImage("deadScreen"),
+				music, rain, santa, resource.getInt("speedRoundPoints"),
+				resource.getInt("narwhalModePoints"));
 	}
 
-	@Override
-	public void setup() {
-		super.setup();
-		chimneys = new ArrayList<>();
-		setCanvas(1920, 1080);
+	private void setLoadedGame(LoadedGame loaded) {
+		setGlobal(loaded.globals);
+		deadScreen = loaded.deadScreen;
+		mainMusic = loaded.mainMusic;
+		rainSound = loaded.rainSound;
+		santaSound = loaded.santaSound;
+		speedRoundPoints = loaded.speedRoundPoints;
+		narwhalModePoints = loaded.narwhalModePoints;
 	}
 
-	private void setupGame() {
-		initializeGlobal(RESOURCE_DIRECTORY, CONFIG_FILE);
+	private void startGlobalSounds() {
 		ResourceManager resource = runner.getResources();
+		runner.getInput().addListener(gameInput);
 
-		deadScreen = resource.getImage("deadScreen");
-
-		// setup sounds. only happens once
-		mainMusic = resource.getSound("mainMusic", globalRunner);
-		mainMusic.setVolume(resource.getFloat("mainMusicVolume"));
 		mainMusic.loop();
-		rainSound = resource.getSound("rainSound", globalRunner);
-		rainSound.setVolume(resource.getFloat("rainVolume"));
 		rainSound.loop();
-		santaSound = resource.getSound("santaSound", globalRunner);
-		santaSound.setVolume(resource.getFloat("santaSoundVolume"));
-		santaSoundMinDelay = resource.getFloat("santaSoundMinDelay");
-		santaSoundMaxDelay = resource.getFloat("santaSoundMaxDelay");
-		nextSantaSoundTime = millis()
-				+ (int) (random(santaSoundMinDelay, santaSoundMaxDelay) * 1000.0);
+		float santaSoundMinDelay = resource.getFloat("santaSoundMinDelay");
+		float santaSoundMaxDelay = resource.getFloat("santaSoundMaxDelay");
+		globalRunner.scheduleRepeating(playSantaSound,
+				(int) ((santaSoundMinDelay + santaSoundMaxDelay) * 500),
+				(int) ((santaSoundMaxDelay - santaSoundMinDelay) * 500));
 		santaSound.restart();
-
-		speedRoundPoints = resource.getInt("speedRoundPoints");
-		narwhalModePoints = resource.getInt("narwhalModePoints");
 	}
 
 	private void initialize() {
@@ -202,16 +368,31 @@ public class ChristmasGame extends GameApplet {
 		mainMusic.setRate(1);
 
 		box2d = new Box2DProcessing(this);
+		runner.addObject(physics);
+
+		random = runner.createRandom();
 
 		MainGameInitializer initializer = new MainGameInitializer();
 		initializer.initialize(this, runner, group, box2d);
 
 		ResourceManager resource = runner.getResources();
 
-		minChimneyWait = (int) (resource.getFloat("minChimneyDelay") * 1000);
-		maxChimneyWait = (int) (resource.getFloat("maxChimneyDelay") * 1000);
-		nextChimneyTime = millis();
+		// the pools wait for the group to draw past deleted objects
+		presentPool = new ObjectPool<>(runner, group, newPresent);
+		presentPool.prewarm(resource.getInt("presentPoolSize"));
+		chimneyPool = new ObjectPool<>(runner, group, newChimney);
+		chimneyPool.prewarm(resource.getInt("chimneyPoolSize"));
+		pointTextPool = new ObjectPool<>(runner, group, newPointText);
+		pointTextPool.prewarm(resource.getInt("pointTextPoolSize"));
+
+		// chimneys appear at random times while the game is running
+		float minChimneyDelay = resource.getFloat("minChimneyDelay");
+		float maxChimneyDelay = resource.getFloat("maxChimneyDelay");
 		chimneys.clear();
+		spawnChimney();
+		runner.scheduleRepeating(spawnChimney,
+				(int) ((minChimneyDelay + maxChimneyDelay) * 500),
+				(int) ((maxChimneyDelay - minChimneyDelay) * 500));
 
 		pointSound = resource.getSound("pointSound", runner);
 		pointSound.setVolume(resource.getFloat("pointVolume"));
@@ -251,13 +432,16 @@ public class ChristmasGame extends GameApplet {
 		
 		switch (currentScreen) {
 		case START:
-			if(splashScreen == null) {
+			if(!loadingStarted) {
 				System.out.println("Loading splash screen...");
-				splashScreen = loadImage(
-						RESOURCE_DIRECTORY.resolve("splashScreen.png")
-						.toString());
-				System.out.println("Splash screen loaded.");
+				loadingStarted = true;
+				getJobs().submit(loadSplashScreen, splashScreenLoaded);
+				getJobs().submit(loadGame, gameLoaded);
+			} else if(splashScreen == null) {
+				// still loading
+			} else if(!splashScreenShown) {
 				image(splashScreen, 0, 0, getCanvasWidth(), getCanvasHeight());
+				splashScreenShown = true;
 			} else if(!fontPrepared()) {
 				System.out.println("Preparing font...");
 				// loads the fonts so they will be ready
@@ -269,7 +453,10 @@ public class ChristmasGame extends GameApplet {
 		case GAME:
 			gameFrame++;
 
-			if (gameFrame == 0) {
+			// wait for loading to finish, and show this for one frame before
+			// the game is initialized
+			if (gameFrame == 0 || !gameSetup) {
+				gameFrame = 0;
 				textSize(36);
 				textAlign(CENTER);
 				text("Loading...", getCanvasWidth() / 2, 
@@ -278,38 +465,27 @@ public class ChristmasGame extends GameApplet {
 			}
 			// no break, continue.
 		case DEAD:
-			if (!gameSetup) {
-				setupGame();
-				gameSetup = true;
-			}
-			if (!gameInitialized) {
-				initialize();
-				gameInitialized = true;
+			synchronized (getSimulationLock()) {
+				if (!gameInitialized) {
+					initialize();
+					gameInitialized = true;
+				}
 			}
 
-			box2d.step((float)(millis()-lastTime) / 1000f * runner.getSpeed(),
-					10, 8);
-			box2d.world.clearForces();
-			
 			super.gameLoop();
 
-			// chimney stuff starts here
-			if (currentScreen == GameScreen.GAME 
-					&& millis() > nextChimneyTime) {
-				Chimney chimney = new Chimney(runner, box2d, this);
-				group.addSprite(chimney);
-				runner.addObject(chimney);
-				chimneys.add(chimney);
-				nextChimneyTime = millis()
-						+ (int) random(minChimneyWait, maxChimneyWait);
-			}
-			List<Chimney> chimneysToDelete = new ArrayList<>();
-			for (Chimney c : chimneys) {
-				if (c.readyToDelete())
-					chimneysToDelete.add(c);
-			}
-			for (Chimney c : chimneysToDelete) {
-				chimneys.remove(c);
+			if (devMode) {
+				// the pools are used by the simulation, which might be on its
+				// own thread
+				String poolInfo;
+				synchronized (getSimulationLock()) {
+					poolInfo = "presents: " + presentPool + "\nchimneys: "
+							+ chimneyPool + "\npoint text: " + pointTextPool;
+				}
+				// below the engine's information
+				textSize(12);
+				textAlign(LEFT);
+				text(poolInfo, 0, 170);
 			}
 
 			if (currentScreen == GameScreen.DEAD) {
@@ -328,8 +504,6 @@ public class ChristmasGame extends GameApplet {
 				text("Speed Round!!", getCanvasWidth() / 2, 56);
 			}
 			if (currentScreen == GameScreen.DEAD && points <= 0) {
-				if (deadMessage < 0)
-					deadMessage = (int) floor(random(0, 9));
 				String deadText = "";
 				switch (deadMessage) {
 				case 0:
@@ -366,17 +540,21 @@ public class ChristmasGame extends GameApplet {
 						getCanvasHeight() / 2 + 40);
 			}
 
-			if (millis() > nextSantaSoundTime) {
-				santaSound.restart();
-				nextSantaSoundTime = millis()
-						+ (int) (random(santaSoundMinDelay, santaSoundMaxDelay)
-						* 1000.0);
-			}
-
 			break;
 		}
-		
-		lastTime = millis();
+	}
+
+	@Override
+	public GameRunner restartForReplay(long seed) {
+		if (!gameSetup) {
+			setupGame();
+			gameSetup = true;
+		}
+		runner.setSeed(seed);
+		currentScreen = GameScreen.GAME;
+		initialize();
+		gameInitialized = true;
+		return runner;
 	}
 
 }
@@ -1,13 +1,13 @@
 package christmas;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import engine.*;
 import engine.graphics.*;
 import processing.core.*;
 
 public class HouseGroup extends SpriteGroup {
-	private final Random random;
+	private final SplittableRandom random;
 	private final GameRunner runner;
 	
 	private final float screenWidth;
@@ -34,8 +34,16 @@ public class HouseGroup extends SpriteGroup {
 
 		@Override
 		public void think(int currentTime, int elapsedTime) {
-			if(x + getSpriteGroupX() < -houseWidth) {
+			float distance = x + getSpriteGroupX() + houseWidth;
+			if(distance < 0) {
 				delete();
+			} else if(isMoving) {
+				// nothing to do until the house is off the screen
+				float seconds = distance / -moveSpeed;
+				runner.sleepUntil(this,
+						currentTime + (int)(seconds * 1000) + 1);
+			} else {
+				runner.sleep(this);
 			}
 		}
 	}
@@ -49,7 +57,7 @@ public class HouseGroup extends SpriteGroup {
 		x = 0;
 		y = 0;
 		
-		random = new Random();
+		random = runner.createRandom();
 		
 		ResourceManager resource = runner.getResources();
 		
@@ -86,6 +94,12 @@ public class HouseGroup extends SpriteGroup {
 		
 	}
 	
+	@Override
+	public boolean canThinkInParallel() {
+		// think() adds new houses to the runner
+		return false;
+	}
+	
 	private void addMoreHouses() {
 		if(nextHousePosition >= screenWidth - x + houseWidth)
 			return;
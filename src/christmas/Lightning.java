@@ -6,7 +6,8 @@ import engine.graphics.*;
 import processing.core.PGraphics;
 
 public class Lightning implements Effect {
-	private Random random;
+	private final GameRunner runner;
+	private final SplittableRandom random;
 	private int frameCount;
 	
 	private long currentSeed;
@@ -15,14 +16,18 @@ public class Lightning implements Effect {
 	private final int displayFrames;
 	
 	public Lightning(GameRunner run) {
-		random = new Random();
+		runner = run;
+		random = run.createRandom();
 		frameCount = 0;
 		waitFrames = run.getResources().getInt("lightningWaitFrames");
 		displayFrames = run.getResources().getInt("lightningDisplayFrames");
 	}
 	
 	@Override
-	public void start(int time) { }
+	public void start(int time) {
+		// lightning is only drawn, so it never needs to think or update
+		runner.sleep(this);
+	}
 	
 	@Override
 	public void think(int currentTime, int elapsedTime) { }
@@ -35,10 +40,13 @@ public class Lightning implements Effect {
 		return false;
 	}
 	
+	// SpriteGroup draws the lightning itself (see Effect.getDrawable()). That
+	// is safe because frameCount, currentSeed and random are only used here,
+	// on the thread that draws, and the simulation never changes them.
 	@Override
 	public void draw(PGraphics g) {
 		if(frameCount % waitFrames == 0)
-			currentSeed = System.currentTimeMillis();
+			currentSeed = random.nextLong();
 		
 		if(frameCount % waitFrames >= 0
 				&& frameCount % waitFrames < displayFrames)
@@ -48,11 +56,12 @@ public class Lightning implements Effect {
 	}
 	
 	private void drawLightning(PGraphics g) {
-		random.setSeed(currentSeed);
+		// the same bolt is drawn every frame until the next one
+		SplittableRandom bolt = new SplittableRandom(currentSeed);
 		
-		int direction = random.nextBoolean() ? 1 : -1;
+		int direction = bolt.nextBoolean() ? 1 : -1;
 		
-		float x = (float)random.nextDouble() * g.width;
+		float x = (float)bolt.nextDouble() * g.width;
 		float x1 = x;
 		float y = 0;
 		float y1 = y;
@@ -60,15 +69,15 @@ public class Lightning implements Effect {
 		g.strokeWeight(4);
 		while(y < g.height) {
 			
-			x1 += random.nextDouble() * 64 * direction;
-			y1 += random.nextDouble() * 300 + 200;
+			x1 += bolt.nextDouble() * 64 * direction;
+			y1 += bolt.nextDouble() * 300 + 200;
 			
 			g.line(x, y, x1, y1);
 			x = x1;
 			y = y1;
 			
-			x1 += random.nextDouble() * 64 * -direction;
-			y1 += -random.nextDouble() * 64;
+			x1 += bolt.nextDouble() * 64 * -direction;
+			y1 += -bolt.nextDouble() * 64;
 			
 			g.line(x, y, x1, y1);
 			x = x1;
@@ -19,10 +19,13 @@ public class MainGameInitializer{
 		BackgroundImage background =
 				new BackgroundImage(runner, game, resource.getImage("sky"));
 		runner.addObject(background);
+		runner.setTickDivisor(background,
+				resource.getInt("backgroundTickDivisor"));
 		group.addEffect(background);
 		
 		Rain rain = new Rain(runner);
 		runner.addObject(rain);
+		runner.setTickDivisor(rain, resource.getInt("rainTickDivisor"));
 		group.addEffect(rain);
 		
 		Lightning lightning = new Lightning(runner);
@@ -72,7 +75,7 @@ public class MainGameInitializer{
 		
 		int sleighFollowDistance = resource.getInt("sleighFollowDistance");
 		SleighFollower sleigh =
-				new SleighFollower(runner, group, box2d, game,
+				new SleighFollower(runner, group, game,
 						lastReindeer, sleighFollowDistance);
 		runner.addObject(sleigh);
 		group.addSprite(sleigh);
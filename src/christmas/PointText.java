@@ -1,49 +1,91 @@
 package christmas;
 
 import processing.core.PGraphics;
+import engine.GameRunner;
 import engine.graphics.*;
 
 public class PointText extends PositionableSprite {
-	private int startTime;
-	private final int pointValue;
+	// what gets drawn, which is replaced instead of changed, since it can be
+	// drawn while the next step runs
+	private static class Label implements Drawable {
+		private final int pointValue;
+		
+		Label(int pointValue) {
+			this.pointValue = pointValue;
+		}
+		
+		@Override
+		public void draw(PGraphics g) {
+			if(pointValue > 0)
+				g.fill(255,255,0);
+			else
+				g.fill(255, 0, 0);
+			g.textSize(24);
+			g.textAlign(PGraphics.CENTER, PGraphics.CENTER);
+			g.text(pointValue, 0, 0);
+			
+			//reset state
+			g.fill(255,255,255);
+		}
+	}
+	
+	private final GameRunner runner;
 	private final float endY;
+	private Label label;
 	//per milli
-	private final float moveSpeed;
+	private float moveSpeed;
 	
-	public PointText(int points, float x, float y, float screenHeight) {
-		this.x = x;
-		this.y = y;
-		pointValue = points;
+	private final Runnable deleteText = new Runnable() {
+		@Override
+		public void run() {
+			delete();
+		}
+	};
+	
+	/**
+	 * PointTexts are kept in an ObjectPool, so they are made once and given
+	 * their points with show() each time they are used.
+	 */
+	public PointText(GameRunner runner, float screenHeight) {
+		this.runner = runner;
 		layer = 128;
 		endY = screenHeight * .6f;
+		label = new Label(0);
+	}
+	
+	public void show(int points, float x, float y) {
+		this.x = x;
+		this.y = y;
+		if(label.pointValue != points)
+			label = new Label(points);
 		moveSpeed = (y - endY) / 300;
 	}
 	
+	@Override
+	public void reset() {
+		super.reset();
+		layer = 128;
+	}
+	
+	@Override
+	public Drawable getDrawable() {
+		return label;
+	}
+	
 	@Override
 	public void draw(PGraphics g) {
-		if(pointValue > 0)
-			g.fill(255,255,0);
-		else
-			g.fill(255, 0, 0);
-		g.textSize(24);
-		g.textAlign(PGraphics.CENTER, PGraphics.CENTER);
-		g.text(pointValue, 0, 0);
-		
-		//reset state
-		g.fill(255,255,255);
+		label.draw(g);
 	}
 	
 	@Override
 	public void start(int time) {
-		startTime = time;
+		runner.schedule(deleteText, 1000);
 	}
 	
 	@Override
 	public void think(int currentTime, int elapsedTime) {
 		if(y > endY)
 			y -= moveSpeed * elapsedTime;
-		if(currentTime - startTime > 1000)
-			delete();
 	}
 	
 }
@@ -1,5 +1,7 @@
 package christmas;
 
+import java.util.SplittableRandom;
+
 import engine.*;
 import engine.graphics.*;
 import engine.sound.*;
@@ -13,35 +15,53 @@ public class Present extends ImageSprite {
 	private final Box2DProcessing box2d;
 	private final ResourceManager resource;
 	private final float screenHeight;
+	private final SplittableRandom random;
+	private final int numImages;
+	private final float scale;
 	
 	private Body body;
 	private final Sound fallSound;
 	private final int fallPoints;
 	
+	/**
+	 * Presents are kept in an ObjectPool, so they are made once and given a
+	 * position with launch() each time they are used.
+	 */
 	public Present(GameRunner runner, Box2DProcessing box2d,
-			ChristmasGame game, float x, float y) {
+			ChristmasGame game) {
 		super();
 		this.box2d = box2d;
 		this.game = game;
 		resource = runner.getResources();
 		
 		screenHeight = runner.getApplet().getCanvasHeight();
-		this.x = x;
-		this.y = y;
-		
-		String imageName = "present" +
-				(int)(Math.random() * resource.getShort("numPresents"));
-		super.setImage(resource.getImage(imageName));
-		super.setScale(resource.getFloat("presentScale"));
+		random = runner.createRandom();
+		numImages = resource.getShort("numPresents");
+		scale = resource.getFloat("presentScale");
+		fallPoints = -resource.getInt("fallPoints");
 		
+		// the sound stays with the present in the pool, so it stops when it
+		// finishes instead of deleting itself
 		fallSound = resource.getSound("presentFallSound", runner);
 		fallSound.setVolume(resource.getFloat("presentFallVolume"));
-		fallSound.deleteWhenFinished();
-		fallPoints = -resource.getInt("fallPoints");
 		
 		layer = 4;
 	}
 	
+	public void launch(float x, float y) {
+		this.x = x;
+		this.y = y;
+		super.setImage(resource.getImage("present" + random.nextInt(numImages)));
+		super.setScale(scale);
+	}
+	
+	@Override
+	public void reset() {
+		super.reset();
+		body = null;
+		layer = 4;
+	}
+	
 	@Override
 	public void start(int time) {
 		makeBody(resource);
@@ -70,6 +90,12 @@ public class Present extends ImageSprite {
 		}
 	}
 	
+	@Override
+	public boolean canThinkInParallel() {
+		// think() uses the Box2D world and adds points to the game
+		return false;
+	}
+	
 	public void presentDelete() {
 		box2d.destroyBody(body);
 		delete();
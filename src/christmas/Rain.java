@@ -3,12 +3,42 @@ package christmas;
 import java.util.Collection;
 
 import engine.*;
+import engine.graphics.Drawable;
 import engine.graphics.Effect;
 import processing.core.PGraphics;
 import processing.core.PImage;
 
 public class Rain implements Effect {
+	// one frame of rain, tiled over the screen
+	private static class RainFrame implements Drawable {
+		private final PImage image;
+		private final int rainWidth;
+		private final int rainHeight;
+		private final float width;
+		private final float height;
+		
+		RainFrame(PImage image, int rainWidth, int rainHeight,
+				float width, float height) {
+			this.image = image;
+			this.rainWidth = rainWidth;
+			this.rainHeight = rainHeight;
+			this.width = width;
+			this.height = height;
+		}
+		
+		@Override
+		public void draw(PGraphics g) {
+			for(int x = 0; x < width; x+= rainWidth) {
+				for(int y = 0; y < height; y+= rainHeight) {
+					g.image(image, x, y);
+				}
+			}
+		}
+	}
+	
 	private PImage[] rain;
+	// made once, so drawing doesn't read frame while update() changes it
+	private RainFrame[] frames;
 	private int rainWidth;
 	private int rainHeight;
 	
@@ -31,6 +61,11 @@ public class Rain implements Effect {
 		
 		width = run.getApplet().getCanvasWidth();
 		height = run.getApplet().getCanvasHeight();
+		frames = new RainFrame[rain.length];
+		for(int i = 0; i < rain.length; i++) {
+			frames[i] = new RainFrame(rain[i], rainWidth, rainHeight,
+					width, height);
+		}
 	}
 	
 	@Override
@@ -52,13 +87,14 @@ public class Rain implements Effect {
 		return false;
 	}
 	
+	@Override
+	public Drawable getDrawable() {
+		return frames[frame];
+	}
+	
 	@Override
 	public void draw(PGraphics g) {
-		for(int x = 0; x < width; x+= rainWidth) {
-			for(int y = 0; y < height; y+= rainHeight) {
-				g.image(rain[frame], x, y);
-			}
-		}
+		frames[frame].draw(g);
 	}
 	
 	@Override
@@ -0,0 +1,45 @@
+package engine;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+import processing.core.PImage;
+
+/**
+ * Decoded assets that are shared by many headless ResourceManagers, so that
+ * games running side by side in one process only load each file once. Shared
+ * assets are read-only: nothing should change the pixels of a shared image.
+ * AssetCache is thread-safe.
+ */
+public class AssetCache {
+	private final ConcurrentHashMap<Path, PImage> images;
+	
+	public AssetCache() {
+		images = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Get an image, loading it if no one has yet.
+	 * @param file the image file
+	 * @return the image, or null if it couldn't be loaded
+	 */
+	public PImage getImage(Path file) {
+		file = file.toAbsolutePath().normalize();
+		PImage image = images.get(file);
+		if(image != null)
+			return image;
+		image = ResourceManager.readImage(file);
+		if(image == null)
+			return null;
+		PImage existing = images.putIfAbsent(file, image);
+		return existing != null ? existing : image;
+	}
+	
+	/**
+	 * Get the number of images that have been loaded.
+	 * @return the number of images
+	 */
+	public int numImages() {
+		return images.size();
+	}
+}
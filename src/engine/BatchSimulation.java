@@ -0,0 +1,156 @@
+package engine;
+
+/**
+ * Runs a game as fast as the CPU allows, for batch runs that need a lot of
+ * game time. Instead of waiting for real time to pass, it moves a VirtualClock
+ * forward by a fixed amount before each loop of the game, so every run of the
+ * same game takes the same steps. Nothing is drawn, unless a render function
+ * is given to be called every so many steps.
+ */
+public class BatchSimulation {
+	private final GameRunner runner;
+	private final VirtualClock clock;
+	private final Runnable loop;
+	private final long stepLength;
+	
+	private Runnable render;
+	private int renderInterval;
+	
+	private long steps;
+	private long simulatedTime;
+	private long wallTime;
+	
+	/**
+	 * Construct a BatchSimulation for a HeadlessApplet. The applet must have
+	 * been constructed with a VirtualClock, and load() must have been called.
+	 * @param applet the applet to simulate
+	 * @param stepsPerSecond the number of steps per second of virtual time
+	 */
+	public BatchSimulation(final HeadlessApplet applet, float stepsPerSecond) {
+		this(applet.getRunner(), new Runnable() {
+			@Override
+			public void run() {
+				applet.step();
+			}
+		}, stepsPerSecond);
+	}
+	
+	/**
+	 * Construct a BatchSimulation.
+	 * @param runner the main GameRunner of the game, which must be using a
+	 * VirtualClock. Its game time is what gets measured.
+	 * @param loop the function to run each step, which should call gameLoop()
+	 * for the runner, and any other runners using the same clock
+	 * @param stepsPerSecond the number of steps per second of virtual time
+	 */
+	public BatchSimulation(GameRunner runner, Runnable loop,
+			float stepsPerSecond) {
+		if(!(runner.getClock() instanceof VirtualClock))
+			throw new IllegalArgumentException(
+					"Batch simulations need a GameRunner with a VirtualClock");
+		if(stepsPerSecond <= 0)
+			throw new IllegalArgumentException(
+					"Steps per second must be positive");
+		this.runner = runner;
+		this.loop = loop;
+		clock = (VirtualClock)runner.getClock();
+		stepLength = Math.max(Math.round(
+				GenericGameRunner.NANOS_PER_SECOND / (double)stepsPerSecond), 1);
+		render = null;
+		renderInterval = 0;
+	}
+	
+	/**
+	 * Call a function every so many steps, such as to draw the game or save
+	 * some statistics.
+	 * @param render the function to call, or null to never call one
+	 * @param interval the number of steps between calls
+	 */
+	public void setRender(Runnable render, int interval) {
+		this.render = render;
+		renderInterval = Math.max(interval, 1);
+	}
+	
+	/**
+	 * Run steps until a certain amount of game time has been simulated. Game
+	 * time follows the speed of the runner, so at speed 2 this takes half as
+	 * many steps. Nothing happens if the runner's speed isn't positive.
+	 * @param seconds the game time to simulate, in seconds
+	 */
+	public void run(double seconds) {
+		if(runner.getSpeed() <= 0)
+			return;
+		long startWallTime = System.nanoTime();
+		long startGameTime = runner.getTimeNanos();
+		long end = startGameTime
+				+ (long)(seconds * GenericGameRunner.NANOS_PER_SECOND);
+		while(runner.getTimeNanos() < end)
+			step();
+		simulatedTime += runner.getTimeNanos() - startGameTime;
+		wallTime += System.nanoTime() - startWallTime;
+	}
+	
+	/**
+	 * Run a certain number of steps.
+	 * @param count the number of steps to run
+	 */
+	public void runSteps(long count) {
+		long startWallTime = System.nanoTime();
+		long startGameTime = runner.getTimeNanos();
+		for(long i = 0; i < count; i++)
+			step();
+		simulatedTime += runner.getTimeNanos() - startGameTime;
+		wallTime += System.nanoTime() - startWallTime;
+	}
+	
+	private void step() {
+		clock.advance(stepLength);
+		loop.run();
+		steps++;
+		if(render != null && steps % renderInterval == 0)
+			render.run();
+	}
+	
+	/**
+	 * Get the number of steps that have been run.
+	 * @return the number of steps
+	 */
+	public long getSteps() {
+		return steps;
+	}
+	
+	/**
+	 * Get the game time that has been simulated by run() and runSteps().
+	 * @return the game time, in seconds
+	 */
+	public double getSimulatedSeconds() {
+		return simulatedTime / (double)GenericGameRunner.NANOS_PER_SECOND;
+	}
+	
+	/**
+	 * Get the real time that run() and runSteps() have taken.
+	 * @return the real time, in seconds
+	 */
+	public double getWallSeconds() {
+		return wallTime / (double)GenericGameRunner.NANOS_PER_SECOND;
+	}
+	
+	/**
+	 * Get how fast the simulation has run compared to real time.
+	 * @return the number of seconds of game time simulated for each second of
+	 * real time
+	 */
+	public double getSimulatedSecondsPerSecond() {
+		if(wallTime == 0)
+			return 0;
+		return (double)simulatedTime / wallTime;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%d steps, %.1f game seconds in %.2f seconds "
+				+ "(%.1f game seconds per second)", steps,
+				getSimulatedSeconds(), getWallSeconds(),
+				getSimulatedSecondsPerSecond());
+	}
+}
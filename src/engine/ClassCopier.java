@@ -0,0 +1,81 @@
+package engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Makes copies of a class. Each copy is loaded by its own class loader, so it
+ * is a different class with the same code, and the JIT profiles it on its own.
+ * The class has to be a public top-level class, and it can only use public
+ * classes and members, because its copies aren't in the same runtime package.
+ * @see ClassStepper
+ */
+final class ClassCopier {
+	private final Class<?> template;
+	//the template's class file, or null if it couldn't be read
+	private final byte[] code;
+	
+	/**
+	 * Read the class file for a class, to make copies from.
+	 * @param template the class to copy
+	 */
+	ClassCopier(Class<?> template) {
+		this.template = template;
+		code = readClassFile(template);
+	}
+	
+	/**
+	 * Load a new copy of the class.
+	 * @return the copy, or the class itself if it can't be copied, such as
+	 * when its class file can't be read
+	 */
+	Class<?> newCopy() {
+		if(code == null)
+			return template;
+		try {
+			return new CopyLoader().loadClass(template.getName());
+		} catch(ClassNotFoundException | LinkageError | SecurityException e) {
+			return template;
+		}
+	}
+	
+	//loads the copy, and leaves every other class to the template's loader
+	private class CopyLoader extends ClassLoader {
+		CopyLoader() {
+			super(template.getClassLoader());
+		}
+		
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve)
+				throws ClassNotFoundException {
+			if(!name.equals(template.getName()))
+				return super.loadClass(name, resolve);
+			synchronized(getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if(c == null)
+					c = defineClass(name, code, 0, code.length);
+				if(resolve)
+					resolveClass(c);
+				return c;
+			}
+		}
+	}
+	
+	private static byte[] readClassFile(Class<?> type) {
+		String name = type.getName();
+		String file = name.substring(name.lastIndexOf('.') + 1) + ".class";
+		try(InputStream in = type.getResourceAsStream(file)) {
+			if(in == null)
+				return null;
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n;
+			while((n = in.read(buffer)) > 0)
+				out.write(buffer, 0, n);
+			return out.toByteArray();
+		} catch(IOException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package engine;
+
+import java.util.Collection;
+
+/**
+ * The loops that step one class of object. GenericGameRunner loads a separate
+ * copy of this class for each class of object it steps, with a ClassCopier.
+ * The JIT profiles the calls in each copy on their own, so each copy only sees
+ * one class of object and can inline its methods, instead of every class going
+ * through the same megamorphic call.
+ *
+ * Because each copy has its own class loader, this class can only use public
+ * classes and members, and it has to stay a top-level class with a public
+ * constructor.
+ */
+public final class ClassStepper implements ObjectStepper {
+	public ClassStepper() {
+	}
+	
+	@Override
+	public void think(GameObject[] objects, int size, int time,
+			int elapsedTime) {
+		for(int i = 0; i < size; i++)
+			objects[i].think(time, elapsedTime);
+	}
+	
+	@Override
+	public void update(GameObject[] objects, int size, UpdateQueue again) {
+		for(int i = 0; i < size; i++) {
+			Collection<GameObject> others = objects[i].update();
+			if(others != null)
+				again.updateAgain(others);
+		}
+	}
+}
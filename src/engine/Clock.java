@@ -0,0 +1,27 @@
+package engine;
+
+/**
+ * A source of real time for a GameRunner. The runner measures how much time
+ * passes between calls to gameLoop() with its clock, and turns that into game
+ * time.
+ */
+public interface Clock {
+	
+	/**
+	 * The system's high-resolution clock, System.nanoTime(). It never jumps
+	 * when the system time is changed.
+	 */
+	public static final Clock SYSTEM = new Clock() {
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	};
+	
+	/**
+	 * Get the current time. Only the difference between two times means
+	 * anything, and times must never go backwards.
+	 * @return the time, in nanoseconds
+	 */
+	public long nanoTime();
+}
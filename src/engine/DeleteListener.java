@@ -0,0 +1,15 @@
+package engine;
+
+/**
+ * Receives a notice when a GameObject becomes ready to delete, so that it
+ * doesn't have to check readyToDelete() every frame.
+ * @see GameObject#addDeleteListener(DeleteListener)
+ */
+public interface DeleteListener {
+	/**
+	 * Called once, when the object's readyToDelete() method starts returning
+	 * true. This happens during the object's update.
+	 * @param o the object that is ready to delete
+	 */
+	void readyToDelete(GameObject o);
+}
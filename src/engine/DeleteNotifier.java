@@ -0,0 +1,79 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the DeleteListeners of a GameObject, and notifies them when the object
+ * is ready to delete. GameObjects can use this to implement
+ * addDeleteListener() and removeDeleteListener().
+ */
+public class DeleteNotifier {
+	private static final DeleteListener[] NO_LISTENERS = new DeleteListener[0];
+	
+	private final GameObject object;
+	private DeleteListener[] listeners;
+	private int numListeners;
+	private boolean notified;
+	
+	/**
+	 * Construct a DeleteNotifier.
+	 * @param object the object to give to the listeners
+	 */
+	public DeleteNotifier(GameObject object) {
+		this.object = object;
+		listeners = NO_LISTENERS;
+		numListeners = 0;
+		notified = false;
+	}
+	
+	/**
+	 * Add a listener. If the object has already been deleted, the listener is
+	 * notified right away.
+	 * @param l the listener to add
+	 */
+	public void add(DeleteListener l) {
+		if(numListeners == listeners.length)
+			listeners = Arrays.copyOf(listeners, numListeners * 2 + 1);
+		listeners[numListeners++] = l;
+		if(notified)
+			l.readyToDelete(object);
+	}
+	
+	/**
+	 * Remove a listener, if it was added.
+	 * @param l the listener to remove
+	 */
+	public void remove(DeleteListener l) {
+		for(int i = 0; i < numListeners; i++) {
+			if(listeners[i] == l) {
+				numListeners--;
+				System.arraycopy(listeners, i + 1, listeners, i,
+						numListeners - i);
+				listeners[numListeners] = null;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Forget every listener, and forget that the object was deleted, so it
+	 * can be used again.
+	 */
+	public void reset() {
+		Arrays.fill(listeners, 0, numListeners, null);
+		numListeners = 0;
+		notified = false;
+	}
+	
+	/**
+	 * Notify all listeners that the object is ready to delete. Only the first
+	 * call does anything.
+	 */
+	public void notifyDeleted() {
+		if(notified)
+			return;
+		notified = true;
+		for(int i = 0; i < numListeners; i++)
+			listeners[i].readyToDelete(object);
+	}
+}
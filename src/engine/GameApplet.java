@@ -2,10 +2,14 @@ package engine;
 
 import java.awt.Toolkit;
 import java.awt.Dimension;
+import java.io.IOException;
 import java.nio.file.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
 
 import engine.graphics.*;
 import processing.core.*;
+import processing.event.*;
 
 /**
  * The main game applet. Keeps track of the game runner, the main sprite group,
@@ -13,21 +17,60 @@ import processing.core.*;
  * @author jacobvanthoog
  *
  */
-public abstract class GameApplet extends PApplet {
+public abstract class GameApplet extends PApplet implements Replayable {
 	public static final int ENGINE_VERSION_MAJOR = 0;
 	public static final int ENGINE_VERSION_MINOR = 0;
 	public static final int ENGINE_VERSION_REVISION = 0;
 	private static final String STARTUP_MESSAGE =
 			"..:: ChristmasEngine ::..\nDesigned by Jacob van't Hoog";
 	
-	private static int xRes;
-	private static int yRes;
-	private static boolean fullScreen;
-	private static String renderer;
-	private static int smooth;
-	private static boolean startInDevMode = false;
+	//the most simulation steps run in one frame with a fixed tick rate
+	private static final int MAX_STEPS_PER_FRAME = 5;
+	//below this many objects, thinking on multiple threads isn't worth it
+	private static final int PARALLEL_THINK_THRESHOLD = 256;
+	//loops per second of the simulation thread, without a fixed tick rate
+	private static final float DEFAULT_SIMULATION_RATE = 60;
+	//threads for loading and other jobs, leaving one for the game
+	private static final int JOB_THREADS =
+			Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+	//size of the cells of the main group's spatial hash, in canvas units
+	private static final float SPATIAL_CELL_SIZE = 128;
 	
-	private static boolean fontPrepared = false;
+	//settings from the command line. Each applet has its own, so many games
+	//can run in one process.
+	private int xRes = 1280;
+	private int yRes = 720;
+	private boolean fullScreen = false;
+	private String renderer = null;
+	private int smooth = 0;
+	private boolean startInDevMode = false;
+	private float tickRate = 0;
+	private int thinkThreads = 0;
+	private boolean useSimulationThread = false;
+	private Path recordFile = null;
+	private Path replayFile = null;
+	
+	//set by runHeadless()
+	private boolean headless = false;
+	private Clock clock = Clock.SYSTEM;
+	private AssetCache assets = null;
+	
+	//workers for games that weren't started by startApplet() or given a
+	//JobQueue, so games in a batch run don't each start a pool of threads
+	private static JobQueue sharedJobs = null;
+	
+	private ReplayRecorder recorder;
+	//the game's own pool if started by startApplet(), otherwise a share of
+	//the one given to setJobs() or of sharedJobs
+	private JobQueue jobs = null;
+	
+	private boolean fontPrepared = false;
+	
+	//held while the game is simulated, so other threads can change the game
+	//between loops
+	private final Object simulationLock = new Object();
+	private Thread simulationThread;
+	private volatile boolean simulationRunning = false;
 	
 	
 	protected SpriteGroup group;
@@ -37,43 +80,58 @@ public abstract class GameApplet extends PApplet {
 	
 	protected boolean devMode = false;
 	
-	protected float canvasWidth;
-	protected float canvasHeight;
+	protected float canvasWidth = 1;
+	protected float canvasHeight = 1;
 	
 	
 	/**
-	 * Start the game, with some certain parameters that can only be set once.
-	 * @param args command line arguments to interpret. Any unrecognized
-	 * arguments will be ignored.
-	 * @param appletClass the GameApplet class to start
-	 * @param _xRes the x resolution of the window
-	 * @param _yRes the y resolution of the window
-	 * @param _fullScreen whether to run in fullscreen mode. This will override
-	 * the given resolution.
-	 * @param _renderer the renderer class to use. Can be one of the ones
-	 * defined in PConstants (P2D or P3D, but not PDF), or can be null or an
-	 * empty string to use the default, software renderer.
-	 * @param _smooth how much anti-aliasing to draw with. The meaning of this
-	 * can differ among render implementations. 0 turns off smoothing, and
-	 * negative numbers will choose the default setting. Other accepted values
-	 * are 2 or 3 for the default software renderer, or 2, 4, or 8 for the P2D
-	 * or P3D renderers. Smooth levels 4 and 8 may not be compatible with all
-	 * hardware.
+	 * Start the game in a window, or play back a replay if the arguments ask
+	 * for one. The window size, renderer, smoothing and other settings that
+	 * can only be set once are read from the arguments; see the README for the
+	 * full list.
+	 * @param args command line arguments to interpret. The first is skipped,
+	 * since it is the game's resource directory. Unknown arguments are ignored
+	 * with a warning.
+	 * @param applet the game to start
 	 */
-	public static void startApplet(String[] args,
-			Class<? extends GameApplet> appletClass) {
+	public static void startApplet(String[] args, GameApplet applet) {
 		System.out.println(STARTUP_MESSAGE);
 		System.out.println("v" + ENGINE_VERSION_MAJOR
 				+ "." + ENGINE_VERSION_MINOR
 				+ "." + ENGINE_VERSION_REVISION
 				+ "\n\n");
 		
+		applet.jobs = new JobQueue(JOB_THREADS);
+		applet.readArguments(args);
+		if(applet.replayFile != null) {
+			try {
+				applet.replay(applet.replayFile);
+			} catch(IOException e) {
+				System.err.println("Could not replay " + applet.replayFile
+						+ ": " + e.getMessage());
+			}
+			return;
+		}
+		PApplet.runSketch(new String[] {applet.getClass().getName()}, applet);
+	}
+	
+	/**
+	 * Set up the applet to start in a window, from command line arguments.
+	 * @param args command line arguments to interpret. Any unrecognized
+	 * arguments will be ignored.
+	 */
+	private void readArguments(String[] args) {
 		Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 		xRes = (int)screenSize.getWidth();
 		yRes = (int)screenSize.getHeight();
 		fullScreen = true;
 		renderer = PApplet.P2D;
 		smooth = 0;
+		tickRate = 0;
+		thinkThreads = 0;
+		useSimulationThread = false;
+		recordFile = null;
+		replayFile = null;
 		
 		for(int i = 1; i < args.length; i++) {
 			String s = args[i].trim().toLowerCase();
@@ -96,6 +154,23 @@ public abstract class GameApplet extends PApplet {
 			} else if(s.equals("-smooth")) {
 				smooth = Integer.parseInt(value);
 				i += 1;
+			} else if(s.equals("-tickrate")) {
+				tickRate = Float.parseFloat(value);
+				i += 1;
+			} else if(s.equals("-threads")) {
+				thinkThreads = Integer.parseInt(value);
+				i += 1;
+			} else if(s.equals("-jobbudget")) {
+				jobs.setBudget(Float.parseFloat(value));
+				i += 1;
+			} else if(s.equals("-simthread")) {
+				useSimulationThread = true;
+			} else if(s.equals("-record")) {
+				recordFile = Paths.get(value);
+				i += 1;
+			} else if(s.equals("-replay")) {
+				replayFile = Paths.get(value);
+				i += 1;
 			} else if(s.equals("-software")) {
 				renderer = null;
 			} else if(s.equals("-gl")) {
@@ -105,8 +180,6 @@ public abstract class GameApplet extends PApplet {
 				System.err.println("WARNING: Unknown argument " + s);
 			}
 		}
-		
-		PApplet.main(appletClass.getName());
 	}
 	
 	
@@ -156,8 +229,6 @@ public abstract class GameApplet extends PApplet {
 		System.out.println("Setting up game...");
 		if(startInDevMode)
 			devMode(true);
-		canvasWidth = 1;
-		canvasHeight = 1;
 		
 		// draw "..." loading symbol
 		background(0);
@@ -169,12 +240,53 @@ public abstract class GameApplet extends PApplet {
 	
 	@Override
 	public void draw() {
+		runJobCallbacks();
 		scale((float)width / canvasWidth, (float)height / canvasHeight);
 	}
 	
+	/**
+	 * Get the queue for jobs that run in the background, such as loading.
+	 * Callbacks of finished jobs run at the start of each frame, within the
+	 * queue's time budget.
+	 * @return the JobQueue for this game
+	 */
+	public JobQueue getJobs() {
+		if(jobs == null)
+			jobs = sharedJobs().share();
+		return jobs;
+	}
+	
+	/**
+	 * Run this game's jobs on the worker threads of a JobQueue that other
+	 * games share, such as the other games of a batch run. The game still
+	 * runs only its own callbacks. This has to be called before the game
+	 * loads anything. Games started by startApplet() have their own workers,
+	 * and other games share one pool unless they are given a JobQueue.
+	 * @param workers the JobQueue whose workers to run jobs on
+	 */
+	public void setJobs(JobQueue workers) {
+		if(jobs != null)
+			jobs.shutdown();
+		jobs = workers.share();
+	}
+	
+	private static synchronized JobQueue sharedJobs() {
+		if(sharedJobs == null)
+			sharedJobs = new JobQueue(JOB_THREADS);
+		return sharedJobs;
+	}
+	
+	private void runJobCallbacks() {
+		synchronized(simulationLock) {
+			getJobs().runCallbacks();
+		}
+	}
+	
 	protected void setCanvas(float width, float height) {
 		canvasWidth = width;
 		canvasHeight = height;
+		if(group != null)
+			group.setView(0, 0, width, height);
 	}
 	
 	public float getCanvasWidth() {
@@ -185,30 +297,182 @@ public abstract class GameApplet extends PApplet {
 		return canvasHeight;
 	}
 	
+	/**
+	 * The runners and sprite group made by loadGlobal(), to be given to the
+	 * game with setGlobal().
+	 */
+	protected static final class Globals {
+		private final GameRunner runner;
+		private final SpriteGroup group;
+		private final GameRunner globalRunner;
+		private final ReplayRecorder recorder;
+		
+		private Globals(GameRunner runner, SpriteGroup group,
+				GameRunner globalRunner, ReplayRecorder recorder) {
+			this.runner = runner;
+			this.group = group;
+			this.globalRunner = globalRunner;
+			this.recorder = recorder;
+		}
+		
+		public GameRunner getRunner() {
+			return runner;
+		}
+		
+		public SpriteGroup getGroup() {
+			return group;
+		}
+		
+		public GameRunner getGlobalRunner() {
+			return globalRunner;
+		}
+	}
+	
 	/**
 	 * Initialize some things that will be needed for as long as the game is
 	 * running. This includes loading resources, and creating the main
-	 * GameRunner and SpriteGroup.
+	 * GameRunner and SpriteGroup. This is loadGlobal() and setGlobal() on the
+	 * same thread.
 	 * @param resources the path to the game resource directory
 	 * @param config the path to the game configuration file
 	 */
 	protected void initializeGlobal(Path resources, Path config) {
+		setGlobal(loadGlobal(resources, config));
+	}
+	
+	/**
+	 * Load resources, and create the main GameRunner and SpriteGroup, without
+	 * giving them to the game yet. Nothing the game uses is changed, so this
+	 * can run on another thread, such as in a job. Give the result to
+	 * setGlobal() on the main thread, such as from the job's callback.
+	 * @param resources the path to the game resource directory
+	 * @param config the path to the game configuration file
+	 * @return the new runners and sprite group
+	 */
+	protected Globals loadGlobal(Path resources, Path config) {
 		System.out.println("Initializing global resources...");
-		ResourceManager resource = new ResourceManager(this, resources);
+		ResourceManager resource = createResourceManager(resources);
 		ResourceLoader loader = new ResourceConfigReader(config);
 		loader.loadResources(resource);
-		runner = new GenericGameRunner(this, resource);
+		Clock clock = createClock();
+		GameRunner runner = new GenericGameRunner(this, resource, clock);
+		runner.setFixedTimestep(tickRate, MAX_STEPS_PER_FRAME);
+		ReplayRecorder recorder = null;
+		if(recordFile != null) {
+			try {
+				recorder = new ReplayRecorder(recordFile, width, height);
+				runner.setRecorder(recorder);
+				System.out.println("Recording to " + recordFile);
+			} catch(IOException e) {
+				System.err.println("WARNING: Could not record to "
+						+ recordFile + ": " + e.getMessage());
+			}
+		}
+		if(thinkThreads > 1)
+			runner.setParallelThink(new ForkJoinPool(thinkThreads),
+					PARALLEL_THINK_THRESHOLD);
 		
-		group = new SpriteGroup(runner) {
+		SpriteGroup group = new SpriteGroup(runner) {
 			@Override
 			public void start(int time) { }
 		};
+		group.setView(0, 0, canvasWidth, canvasHeight);
+		group.setSpatialHash(new SpatialHash(SPATIAL_CELL_SIZE));
 		
 		//the real game runner will be reset with each game reset, but things
 		//like music should continue through this. The globalRunner won't be
 		//reset when the game is.
-		globalRunner = new GenericGameRunner(this, resource);
+		GameRunner globalRunner = new GenericGameRunner(this, resource, clock);
 		globalRunner.start();
+		return new Globals(runner, group, globalRunner, recorder);
+	}
+	
+	/**
+	 * Give the game the runners and sprite group from loadGlobal(). This
+	 * should be called on the main thread, before the game starts.
+	 * @param globals what loadGlobal() returned
+	 */
+	protected void setGlobal(Globals globals) {
+		synchronized(simulationLock) {
+			runner = globals.runner;
+			group = globals.group;
+			globalRunner = globals.globalRunner;
+			recorder = globals.recorder;
+		}
+	}
+	
+	/**
+	 * Create the ResourceManager that loadGlobal() loads resources into.
+	 * @param resources the path to the game resource directory
+	 * @return a new, empty ResourceManager
+	 */
+	protected ResourceManager createResourceManager(Path resources) {
+		if(!headless)
+			return new ResourceManager(this, resources);
+		if(assets != null)
+			return new ResourceManager(resources, assets);
+		return new ResourceManager(resources);
+	}
+	
+	/**
+	 * Get the clock that loadGlobal() gives to the GameRunners.
+	 * @return the clock to measure time with
+	 */
+	protected Clock createClock() {
+		return clock;
+	}
+	
+	/**
+	 * Make the game run without a display. It can't be started as a sketch
+	 * after this; instead, gameLoop() only simulates the game. Must be called
+	 * before loadGlobal().
+	 * @param clock the clock for the GameRunners
+	 * @param assets the images to share with other games, or null to load a
+	 * copy of each
+	 */
+	protected void runHeadless(Clock clock, AssetCache assets) {
+		headless = true;
+		this.clock = clock;
+		this.assets = assets;
+	}
+	
+	/**
+	 * Check if the game is running without a display. Headless games don't
+	 * draw anything or play sounds.
+	 * @return true if the game is headless
+	 */
+	public boolean isHeadless() {
+		return headless;
+	}
+	
+	/**
+	 * Play a log recorded with -record, headless and as fast as possible.
+	 * The game runs the same steps as the recorded one, and is restarted each
+	 * time the recorded one was, with restartForReplay().
+	 * @param log the replay log
+	 * @throws IOException if the log can't be read
+	 */
+	public void replay(Path log) throws IOException {
+		try(ReplayPlayer player = new ReplayPlayer(log)) {
+			//some things, like Box2D, go by the size of the window
+			width = player.getWidth();
+			height = player.getHeight();
+			runHeadless(new VirtualClock(), null);
+			player.play(this);
+			System.out.println(player);
+		}
+	}
+	
+	/**
+	 * Start a new game in a replay. By default this calls initializeGame().
+	 * Games that do more when they start should override this, and call
+	 * initializeGlobal() first if it hasn't been.
+	 */
+	@Override
+	public GameRunner restartForReplay(long seed) {
+		runner.setSeed(seed);
+		initializeGame();
+		return runner;
 	}
 	
 	/**
@@ -217,12 +481,49 @@ public abstract class GameApplet extends PApplet {
 	 */
 	protected void initializeGame() {
 		System.out.println("Initializing game...");
-		runner.clearAll();
-		group.clearAll();
-		runner.setSpeed(1);
-		runner.addObject(group);
-		
-		runner.start();
+		synchronized(simulationLock) {
+			runner.clearAll();
+			group.clearAll();
+			runner.setSpeed(1);
+			runner.addObject(group);
+			
+			runner.start();
+		}
+	}
+	
+	/**
+	 * Get the lock that is held while the game is simulated. If the game is
+	 * simulated on its own thread, anything that changes the game from another
+	 * thread should hold this lock. Key and mouse events already do, but it is
+	 * better for games to handle keys with an InputListener on the runner's
+	 * Input, which doesn't need to wait for the lock.
+	 * @return the lock object
+	 */
+	protected Object getSimulationLock() {
+		return simulationLock;
+	}
+	
+	@Override
+	protected void handleKeyEvent(KeyEvent event) {
+		//the game handles keys at the start of its next step
+		if(runner != null) {
+			if(event.getAction() == KeyEvent.PRESS)
+				runner.getInput().post(InputEvent.Type.KEY_PRESSED,
+						event.getKey(), event.getKeyCode());
+			else if(event.getAction() == KeyEvent.RELEASE)
+				runner.getInput().post(InputEvent.Type.KEY_RELEASED,
+						event.getKey(), event.getKeyCode());
+		}
+		synchronized(simulationLock) {
+			super.handleKeyEvent(event);
+		}
+	}
+	
+	@Override
+	protected void handleMouseEvent(MouseEvent event) {
+		synchronized(simulationLock) {
+			super.handleMouseEvent(event);
+		}
 	}
 	
 	/**
@@ -236,25 +537,107 @@ public abstract class GameApplet extends PApplet {
 	}
 	
 	/**
-	 * Should be called once per frame. Go through one loop of the game.
+	 * Run one loop of the game simulation, without drawing anything. This is
+	 * called by gameLoop(), or by the simulation thread if there is one. Games
+	 * can override this to do more work each loop, and should call
+	 * super.simulate().
 	 */
-	protected void gameLoop() {
+	protected void simulate() {
 		runner.gameLoop();
 		globalRunner.gameLoop();
-		group.draw(g);
+	}
+	
+	/**
+	 * Should be called once per frame. Go through one loop of the game. If
+	 * the game is simulated on its own thread, this starts the thread the
+	 * first time, and after that only draws the latest snapshot of the game.
+	 */
+	protected void gameLoop() {
+		if(headless) {
+			runJobCallbacks();
+			simulate();
+			return;
+		}
+		if(useSimulationThread) {
+			if(simulationThread == null)
+				startSimulationThread();
+		} else {
+			simulate();
+			group.publishSnapshot();
+		}
+		group.drawSnapshot(g);
 		
 		if(devMode) {
+			//the runners and the group's contents belong to the simulation,
+			//which might be running on its own thread
+			String simulationInfo;
+			synchronized(simulationLock) {
+				simulationInfo = globalRunner.numObjects()
+						+ " global objects\n"
+						+ (runner.numObjects() - runner.numSleepingObjects())
+						+ " active objects\n"
+						+ runner.numSleepingObjects() + " sleeping objects\n"
+						+ runner.getUpdatePasses() + " update passes\n"
+						+ group.numEffects() + " effects\n";
+			}
 			textSize(12);
 			textAlign(LEFT);
 			text((int)frameRate + " fps\n"
-					+ globalRunner.numObjects() + " global objects\n"
-					+ runner.numObjects() + " objects\n"
-					+ group.numEffects() + " effects\n"
+					+ simulationInfo
+					+ group.getNumDrawn() + " drawn, "
+					+ group.getNumCulled() + " culled\n"
+					+ getJobs().numRunning() + " jobs running\n"
 					+ Runtime.getRuntime().totalMemory() / (1024*1024) + " MB"
 					, 0, 10);
 		}
 	}
 	
+	private void startSimulationThread() {
+		simulationRunning = true;
+		simulationThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runSimulation();
+			}
+		}, "Simulation");
+		simulationThread.setDaemon(true);
+		simulationThread.start();
+	}
+	
+	private void runSimulation() {
+		float rate = tickRate > 0 ? tickRate : DEFAULT_SIMULATION_RATE;
+		long period = (long)(1000000000 / rate);
+		long nextLoop = System.nanoTime();
+		while(simulationRunning) {
+			synchronized(simulationLock) {
+				simulate();
+				group.publishSnapshot();
+			}
+			nextLoop += period;
+			long wait = nextLoop - System.nanoTime();
+			if(wait > 0)
+				LockSupport.parkNanos(wait);
+			else
+				nextLoop = System.nanoTime(); //behind, so don't try to catch up
+		}
+	}
+	
+	@Override
+	public void dispose() {
+		simulationRunning = false;
+		if(jobs != null)
+			jobs.shutdown();
+		if(recorder != null) {
+			try {
+				recorder.close();
+			} catch(IOException e) {
+				System.err.println("WARNING: Could not finish recording: "
+						+ e.getMessage());
+			}
+		}
+		super.dispose();
+	}
+	
 	/**
 	 * Load the current PFont, at the current font size, so it is ready to be
 	 * used when needed.
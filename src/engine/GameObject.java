@@ -22,7 +22,9 @@ public interface GameObject {
 	 * Update the values of the object. At this point, the object shouldn't look
 	 * at the values of any other objects, because only some of them will have
 	 * updated.
-	 * @return a list of GameObjects that will need to be updated again, or null
+	 * @return a list of GameObjects that will need to be updated again, or
+	 * null. Each object is updated once more, no matter how many times it is
+	 * listed. Objects that aren't in the GameRunner are ignored.
 	 */
 	Collection<GameObject> update();
 	
@@ -32,9 +34,38 @@ public interface GameObject {
 	 */
 	boolean readyToDelete();
 	
+	/**
+	 * Ask this object to notify a listener when readyToDelete() starts
+	 * returning true, instead of being checked every frame. Objects that
+	 * support this must notify every listener exactly once.
+	 * @param l the listener to notify
+	 * @return true if the listener will be notified, false if readyToDelete()
+	 * needs to be checked instead
+	 */
+	default boolean addDeleteListener(DeleteListener l) {
+		return false;
+	}
+	
+	/**
+	 * Stop notifying a listener that was given to addDeleteListener().
+	 * @param l the listener to remove
+	 */
+	default void removeDeleteListener(DeleteListener l) { }
+	
 	/**
 	 * Called when the speed of the simulation is changed.
 	 * @param speed the number of game seconds per real-world second
 	 */
 	default void speedChange(float speed) { }
+	
+	/**
+	 * Check if think() can run on another thread, at the same time as other
+	 * objects' think() methods. This is only true if think() follows the rules
+	 * and changes nothing but this object. Objects that add or remove other
+	 * objects, or use anything that isn't thread-safe, should return false.
+	 * @return true if think() is safe to run in parallel
+	 */
+	default boolean canThinkInParallel() {
+		return true;
+	}
 }
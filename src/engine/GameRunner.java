@@ -1,5 +1,8 @@
 package engine;
 
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Keeps track of game resources, and allows many operations of the main loop to
  * be placed in a single step.
@@ -24,16 +27,100 @@ public interface GameRunner {
 	public ResourceManager getResources();
 	
 	/**
-	 * Get the current game world time.
+	 * Get the queue for running slow work in the background. Its callbacks run
+	 * on the main thread at the start of each frame.
+	 * @return the applet's JobQueue
+	 */
+	public JobQueue getJobs();
+	
+	/**
+	 * Get the current game world time. This wraps around after about 24 days,
+	 * so compare times by subtracting them. During a step, this is the time
+	 * the step started at.
 	 * @return the game time, in milliseconds
 	 */
 	public int getTime();
 	
 	/**
-	 * Start the game simulation.
+	 * Get the current game world time, without wrapping around.
+	 * @return the game time, in milliseconds
+	 */
+	public long getTimeMillis();
+	
+	/**
+	 * Get the current game world time, to the nanosecond.
+	 * @return the game time, in nanoseconds
+	 */
+	public long getTimeNanos();
+	
+	/**
+	 * Get the game time simulated by the current step, or the last step
+	 * outside of a step. Objects are given whole milliseconds when they think,
+	 * and this gives them the exact time.
+	 * @return the length of the step, in nanoseconds
+	 */
+	public long getStepNanos();
+	
+	/**
+	 * Get the number of steps run since start(). During a step, this is the
+	 * number of steps before it.
+	 * @return the number of steps
+	 */
+	public long getStepCount();
+	
+	/**
+	 * Get the clock this GameRunner measures real time with.
+	 * @return the clock
+	 */
+	public Clock getClock();
+	
+	/**
+	 * Get the input for this game. Input events can be posted to it from any
+	 * thread, and are handled at the start of the next step.
+	 * @return the Input
+	 */
+	public Input getInput();
+	
+	/**
+	 * Start the game simulation. Input events posted before this, such as
+	 * keys pressed on a menu while the runner wasn't stepping, are dropped,
+	 * and every key is treated as up.
 	 */
 	public void start();
 	
+	/**
+	 * Set the seed for random numbers, which the next call to start() will
+	 * use. Without a seed, start() picks a new one each time.
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed);
+	
+	/**
+	 * Get the seed that the simulation was last started with.
+	 * @return the seed
+	 */
+	public long getSeed();
+	
+	/**
+	 * Create a new stream of random numbers for an object. Each stream is split
+	 * from one that start() seeds with the runner's seed, so the numbers are
+	 * the same every time the game is started with the same seed. Streams are
+	 * not shared, so objects can draw from their own while thinking in
+	 * parallel without waiting on each other.
+	 * 
+	 * Streams must be created in a fixed order for the numbers to repeat, so
+	 * call this from the simulation, such as in a constructor, start(), or a
+	 * think() that doesn't run in parallel.
+	 * @return a new random number generator, only to be used by one thread
+	 */
+	public SplittableRandom createRandom();
+	
+	/**
+	 * Record the simulation to a replay log, or stop recording.
+	 * @param recorder the recorder to write to, or null to stop
+	 */
+	public void setRecorder(ReplayRecorder recorder);
+	
 	/**
 	 * Get the speed of the simulation.
 	 * @return the speed of time.
@@ -47,6 +134,70 @@ public interface GameRunner {
 	 */
 	public void setSpeed(float speed);
 	
+	/**
+	 * Run the think and update steps at a fixed rate, independent of how
+	 * often gameLoop() is called. Each gameLoop() call runs as many steps as
+	 * the elapsed game time allows, up to a limit, and every step is given the
+	 * same elapsed time.
+	 * @param ticksPerSecond the number of steps per game-time second, or 0 to
+	 * go back to running one step per gameLoop() call (the default)
+	 * @param maxStepsPerLoop the most steps that a single gameLoop() call will
+	 * run to catch up. Any game time left over after that is dropped.
+	 */
+	public void setFixedTimestep(float ticksPerSecond, int maxStepsPerLoop);
+	
+	/**
+	 * Check if the simulation is running with a fixed timestep.
+	 * @return true if setFixedTimestep() was given a tick rate above 0
+	 */
+	public boolean isFixedTimestep();
+	
+	/**
+	 * Get the game time of one fixed step.
+	 * @return the length of a step, in nanoseconds, or 0 without a fixed
+	 * timestep
+	 */
+	public long getTickNanos();
+	
+	/**
+	 * How far the current frame is between the last step and the next one.
+	 * Sprites can be drawn between their previous and current values by this
+	 * amount to hide the difference between the tick rate and the frame rate.
+	 * @return a value from 0 (the previous step) to 1 (the last step). Always
+	 * 1 if the simulation doesn't have a fixed timestep.
+	 */
+	public float getInterpolation();
+	
+	/**
+	 * Run the think step on multiple threads. The objects are split into
+	 * chunks that think on the given pool. Objects that can't think in
+	 * parallel (see GameObject.canThinkInParallel()) think afterwards, on the
+	 * thread running the game loop.
+	 * @param pool the pool to think on, or null to think on one thread (the
+	 * default)
+	 * @param threshold the number of objects below which the think step stays
+	 * on one thread, because splitting it up would cost more than it saves
+	 */
+	public void setParallelThink(ForkJoinPool pool, int threshold);
+	
+	/**
+	 * Set the most update passes that a single step will run. When objects
+	 * ask for more updates than this (usually because of a cycle, where
+	 * objects keep asking to update each other), a warning is printed and the
+	 * rest of the updates are skipped.
+	 * @param passes the maximum number of update passes per step
+	 */
+	public void setMaxUpdatePasses(int passes);
+	
+	/**
+	 * Get how many update passes were needed to finish the update step. The
+	 * first pass updates every object; more passes are needed when objects
+	 * ask for others to update again.
+	 * @return the most update passes needed by a step in the last gameLoop()
+	 * call
+	 */
+	public int getUpdatePasses();
+	
 	/**
 	 * Add a GameObject to the World. This will not add a Sprite to any
 	 * SpriteGroups.
@@ -60,6 +211,96 @@ public interface GameRunner {
 	 */
 	public void removeObject(GameObject o);
 	
+	/**
+	 * Put an object to sleep until wake() is called for it. Sleeping objects
+	 * stay in the GameRunner, but aren't given think(), update() or
+	 * speedChange() calls, so they cost almost nothing. This takes effect at
+	 * the start of the next step. An object can put itself to sleep, even
+	 * during a parallel think step.
+	 * @param o the object to put to sleep
+	 */
+	public void sleep(GameObject o);
+	
+	/**
+	 * Put an object to sleep until a certain game time, or until wake() is
+	 * called for it. See sleep(GameObject). The object is woken by a timer,
+	 * like the ones from schedule().
+	 * @param o the object to put to sleep
+	 * @param time the game time to wake the object at, in milliseconds. The
+	 * object will think in the first step that starts at or after this time.
+	 */
+	public void sleepUntil(GameObject o, int time);
+	
+	/**
+	 * Wake a sleeping object, so it thinks and updates again. This takes
+	 * effect at the start of the next step. The object is given a
+	 * speedChange() call with the current speed when it wakes. The elapsed
+	 * time of its first think() is the length of that step, not the time it
+	 * was asleep.
+	 * @param o the object to wake
+	 */
+	public void wake(GameObject o);
+	
+	/**
+	 * Check if an object is sleeping.
+	 * @param o the object to check
+	 * @return true if the object is in this GameRunner and sleeping
+	 */
+	public boolean isSleeping(GameObject o);
+	
+	/**
+	 * Get the number of sleeping objects in the GameRunner.
+	 * @return the number of sleeping objects. These are included in
+	 * numObjects().
+	 */
+	public int numSleepingObjects();
+	
+	/**
+	 * Think and update an object only once every few steps, to save time on
+	 * objects that don't need to keep up with every frame. Objects with the
+	 * same divisor are spread out across the steps, so about the same number
+	 * think in each step. The elapsed time given to think() covers all of the
+	 * steps since the object last thought. This takes effect at the start of
+	 * the next step, and is safe to call during a parallel think step.
+	 * @param o the object to change
+	 * @param divisor the number of steps per think and update. 1 (the
+	 * default) thinks and updates every step.
+	 */
+	public void setTickDivisor(GameObject o, int divisor);
+	
+	/**
+	 * Run a single step of a certain length, without reading the clock. This
+	 * is used to play replays.
+	 * @param elapsedNanos the game time to simulate, in nanoseconds
+	 */
+	public void runStep(long elapsedNanos);
+	
+	/**
+	 * Call a function once, after some game time has passed. Timers are kept
+	 * in a timer wheel, so scheduling and cancelling them takes constant time
+	 * no matter how many there are. Because they are measured in game time,
+	 * they follow the speed of the simulation. Timers fire at the start of the
+	 * first step at or after their time, before anything thinks, and are
+	 * cancelled by start() and clearAll().
+	 * @param callback the function to call
+	 * @param delay the game time to wait, in milliseconds
+	 * @return the timer, which can be used to cancel it
+	 */
+	public GameTimer schedule(Runnable callback, int delay);
+	
+	/**
+	 * Call a function over and over, with some game time between each call.
+	 * See schedule().
+	 * @param callback the function to call
+	 * @param interval the average game time between calls, in milliseconds.
+	 * The first call is one interval from now.
+	 * @param jitter the most that each interval is randomly made longer or
+	 * shorter by, in milliseconds. 0 for exact intervals.
+	 * @return the timer, which can be used to cancel it
+	 */
+	public GameTimer scheduleRepeating(Runnable callback, int interval,
+			int jitter);
+	
 	/**
 	 * Checks if the GameRunner has been updating this object.
 	 * @param o the object to check for
@@ -68,6 +309,25 @@ public interface GameRunner {
 	 */
 	public boolean hasObject(GameObject o);
 	
+	/**
+	 * Tell a watcher each time an object is started or removed. The object
+	 * doesn't have to be in the GameRunner yet, and the watcher is kept after
+	 * the object is removed, in case it is added again, until
+	 * unwatchObject() is called. The watcher is called on the thread that
+	 * runs the steps, during the delete and add parts of a step, and
+	 * shouldn't add or remove objects.
+	 * @param o the object to watch
+	 * @param watcher the watcher to notify
+	 */
+	public void watchObject(GameObject o, ObjectWatcher watcher);
+	
+	/**
+	 * Stop telling a watcher about an object.
+	 * @param o the watched object
+	 * @param watcher the watcher given to watchObject()
+	 */
+	public void unwatchObject(GameObject o, ObjectWatcher watcher);
+	
 	
 	/**
 	 * Get the number of objects being updated in the GameRunner.
@@ -82,8 +342,9 @@ public interface GameRunner {
 	
 	
 	/**
-	 * Execute a single step of the game loop.
-	 * The operations that occur, in order:
+	 * Execute a single step of the game loop, or with a fixed timestep, as many
+	 * steps as have elapsed since the last call.
+	 * The operations that occur in each step, in order:
 	 * 	- delete: Any objects marked as "readyToDelete," as well as objects
 	 * given in removeObject() calls, are deleted
 	 *  - add: Any objects given in addObject() calls are added
@@ -0,0 +1,48 @@
+package engine;
+
+/**
+ * A callback scheduled to run at a certain game time. GameTimers are created by
+ * GameRunner.schedule() and GameRunner.scheduleRepeating().
+ */
+public final class GameTimer {
+	final Runnable callback;
+	//the game time to fire at, in milliseconds
+	long expires;
+	//for repeating timers. 0 if the timer only fires once.
+	int interval;
+	int jitter;
+	
+	//the list this timer is in, if it is scheduled
+	TimerWheel.TimerList list;
+	GameTimer prev, next;
+	
+	GameTimer(Runnable callback) {
+		this.callback = callback;
+	}
+	
+	/**
+	 * Check if the timer is waiting to fire.
+	 * @return true if the timer will fire in the future. For repeating
+	 * timers, this is true until they are cancelled.
+	 */
+	public boolean isScheduled() {
+		return list != null || interval > 0;
+	}
+	
+	/**
+	 * Get the game time that the timer will next fire at.
+	 * @return the time, in milliseconds
+	 */
+	public long getTime() {
+		return expires;
+	}
+	
+	/**
+	 * Stop the timer from firing. If it repeats, it won't fire again.
+	 */
+	public void cancel() {
+		interval = 0;
+		if(list != null)
+			list.remove(this);
+	}
+}
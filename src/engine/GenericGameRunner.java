@@ -1,6 +1,8 @@
 package engine;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Keeps track of game resources, and allows many operations of the main loop to
@@ -8,29 +10,357 @@ import java.util.*;
  * The main loop is split into "think" and "update" steps, among others. During
  * the "think" step, objects assess their environment and decide what they will
  * do next. During the "update" step, objects update their attributes.
+ *
+ * Objects are kept in dense arrays, and a frame where nothing is added or
+ * removed doesn't allocate anything. There is one array for each class of
+ * object, so each loop calls the same methods over and over.
+ * Objects are stepped one class at a time, with classes in the order that their
+ * first object was added. Objects of the same class are stepped in the order
+ * they were added, except that when an object is removed, the last object of
+ * its class takes its place. Nothing else about the order is guaranteed, and
+ * every step (think, update, etc.) follows the same order.
+ *
+ * Each class is thought and updated by its own copy of ClassStepper, so the
+ * JIT sees one class at each call and can inline it. A single loop over every
+ * bucket would see every class at the same call, and couldn't.
  * @author jacob
  *
  */
 public class GenericGameRunner implements GameRunner {
+	private static final int DEFAULT_CAPACITY = 256;
+	private static final int DEFAULT_MAX_UPDATE_PASSES = 64;
+	//a copy of ClassStepper for each class of object, shared by every runner
+	private static final ClassCopier STEPPER_COPIER =
+			new ClassCopier(ClassStepper.class);
+	private static final ClassValue<ObjectStepper> STEPPERS =
+			new ClassValue<ObjectStepper>() {
+		@Override
+		protected ObjectStepper computeValue(Class<?> type) {
+			return newStepper();
+		}
+	};
+	static final long NANOS_PER_MILLI = 1000000L;
+	static final long NANOS_PER_SECOND = 1000000000L;
+	
 	private final GameApplet applet;
 	private final ResourceManager resourceManager;
 	
-	private final Set<GameObject> objects;
-	private final Set<GameObject> objectsToAdd;
-	private final Set<GameObject> objectsToRemove;
-	private long lastSystemTime;
-	private int currentGameTime;
+	//the runner's record of an object it has been given
+	private static class Slot {
+		static final int PENDING_ADD = 0;
+		static final int ADDED = 1;
+		static final int PENDING_REMOVE = 2;
+		static final int REMOVED = 3;
+		
+		static final int REQUEST_NONE = 0;
+		static final int REQUEST_SLEEP = 1;
+		static final int REQUEST_WAKE = 2;
+		
+		final GameObject object;
+		int state;
+		//position in the bucket for the object's class, if added
+		Bucket bucket;
+		int index;
+		//position in polledObjects, if readyToDelete() has to be checked
+		int pollIndex;
+		//the last update pass this object was queued for
+		long queuedPass;
+		//wakes the object, if it was put to sleep until a certain time
+		GameTimer wakeTimer;
+		//calls to sleep(), wake() or setTickDivisor() waiting for the next
+		//step
+		boolean scheduleRequested;
+		int requestedSleep;
+		boolean requestedWakeOnTime;
+		int requestedWakeTime;
+		//0 for no change
+		int requestedTickDivisor;
+		//think and update once every this many steps
+		int tickDivisor;
+		//the game time this object has thought up to, if tickDivisor > 1
+		int thoughtUntil;
+		//the elapsed time given to think() in a parallel think step
+		int thinkElapsedTime;
+		
+		Slot(GameObject object) {
+			this.object = object;
+			state = PENDING_ADD;
+			index = -1;
+			pollIndex = -1;
+			queuedPass = -1;
+			tickDivisor = 1;
+		}
+	}
+	
+	//the added objects of one class, or the sleeping objects
+	private static class Bucket {
+		final Class<?> type;
+		//steps the objects of the bucket's class, or null if the bucket isn't
+		//for one class
+		final ObjectStepper stepper;
+		Slot[] slots;
+		//the same objects as slots, in the same order, for the stepper
+		GameObject[] objects;
+		int size;
+		
+		Bucket(Class<?> type, int capacity) {
+			this.type = type;
+			stepper = type == null ? null : stepperFor(type);
+			slots = new Slot[capacity];
+			objects = new GameObject[capacity];
+			size = 0;
+		}
+		
+		void add(Slot slot) {
+			if(size == slots.length) {
+				slots = Arrays.copyOf(slots, size * 2);
+				objects = Arrays.copyOf(objects, size * 2);
+			}
+			slot.bucket = this;
+			slot.index = size;
+			objects[size] = slot.object;
+			slots[size++] = slot;
+		}
+		
+		void remove(Slot slot) {
+			//swap the last object into the removed object's place
+			Slot last = slots[--size];
+			slots[slot.index] = last;
+			objects[slot.index] = last.object;
+			last.index = slot.index;
+			slots[size] = null;
+			objects[size] = null;
+			slot.bucket = null;
+			slot.index = -1;
+		}
+		
+		void clear() {
+			for(int i = 0; i < size; i++) {
+				slots[i].bucket = null;
+				slots[i] = null;
+				objects[i] = null;
+			}
+			size = 0;
+		}
+	}
+	
+	//objects with a tick divisor, split into one bucket for each step of the
+	//cycle, so each step only goes through the objects that tick in it
+	private static class Lane {
+		final int divisor;
+		final Bucket[] phases;
+		
+		Lane(int divisor, int capacity) {
+			this.divisor = divisor;
+			phases = new Bucket[divisor];
+			for(int i = 0; i < divisor; i++)
+				phases[i] = new Bucket(null, capacity);
+		}
+		
+		//new objects go to the emptiest phase, to spread out the load
+		Bucket emptiestPhase() {
+			Bucket emptiest = phases[0];
+			for(int i = 1; i < divisor; i++) {
+				if(phases[i].size < emptiest.size)
+					emptiest = phases[i];
+			}
+			return emptiest;
+		}
+	}
+	
+	//all slots that are not REMOVED
+	private final Map<GameObject, Slot> slots;
+	//the watchers of each watched object, whether or not it is added. The
+	//arrays are replaced instead of changed, so they can be looped over
+	//while watchers are added or removed.
+	private final Map<GameObject, ObjectWatcher[]> watchers;
+	private final Map<Class<?>, Bucket> bucketsByType;
+	//in the order they were created. Buckets are kept when they are empty.
+	private Bucket[] buckets;
+	private int numBuckets;
+	private int numObjects;
+	private final Map<Integer, Lane> lanesByDivisor;
+	private Lane[] lanes;
+	private int numLanes;
+	//the number of steps run since start(), to pick the phase of each lane
+	private long stepCount;
+	//sleeping objects aren't in the bucket for their class
+	private final Bucket sleepingObjects;
+	private final TimerWheel timers;
+	//slots given to sleep(), wake() or setTickDivisor(). Locked, because
+	//objects might call these during a parallel think step.
+	private final Object scheduleLock = new Object();
+	private Slot[] scheduleRequests;
+	private int numScheduleRequests;
+	//objects that don't notify deleteListener, so have to be checked
+	private Slot[] polledObjects;
+	private int numPolledObjects;
+	//objects that notified deleteListener, to remove in the next step
+	private Slot[] deletedObjects;
+	private int numDeletedObjects;
+	//queues the objects that a stepper's update() calls return
+	private final ObjectStepper.UpdateQueue updateAgain =
+			new ObjectStepper.UpdateQueue() {
+		@Override
+		public void updateAgain(Collection<GameObject> objects) {
+			queueAgain(objects);
+		}
+	};
+	private final DeleteListener deleteListener = new DeleteListener() {
+		@Override
+		public void readyToDelete(GameObject o) {
+			Slot slot = slots.get(o);
+			if(slot == null || slot.state != Slot.ADDED)
+				return;
+			if(numDeletedObjects == deletedObjects.length)
+				deletedObjects = Arrays.copyOf(deletedObjects,
+						numDeletedObjects * 2);
+			deletedObjects[numDeletedObjects++] = slot;
+		}
+	};
+	//double buffered, because objects can be added while others start
+	private Slot[] objectsToAdd;
+	private int numObjectsToAdd;
+	private Slot[] objectsToStart;
+	private Slot[] objectsToRemove;
+	private int numObjectsToRemove;
+	//objects that asked for another update, queued for the next update pass
+	private Slot[] updateQueue;
+	private int numToUpdate;
+	private Slot[] nextUpdateQueue;
+	private int numNextToUpdate;
+	//counts every update pass ever run, to mark which pass a slot is queued for
+	private long updatePass;
+	private int maxUpdatePasses;
+	private int lastUpdatePasses;
+	
+	private final Clock clock;
+	private final Input input;
+	//the seed for the next start(), and whether one was given
+	private long seed;
+	private boolean seedSet;
+	private final SplittableRandom seeds;
+	//streams for objects are split from this
+	private SplittableRandom random;
+	private ReplayRecorder recorder;
+	private long lastClockTime;
+	//game time is kept in nanoseconds, so fractions of a millisecond carry
+	//over to the next step instead of being lost
+	private long currentGameTime;
+	private long stepTime;
 	private float speed;
 	private boolean speedChanged;
 	
+	//fixed timestep, in game nanoseconds. 0 if steps follow gameLoop() calls
+	private double tickLength;
+	private int maxStepsPerLoop;
+	private double accumulatedTime;
+	private double fixedGameTime;
+	private float interpolation;
+	
+	private ForkJoinPool thinkPool;
+	private int parallelThinkThreshold;
+	//reused each step to split objects for the parallel think step
+	private Slot[] parallelThinkers;
+	private Slot[] serialThinkers;
+	private int numParallelThinkers;
+	private int numSerialThinkers;
+	
+	/**
+	 * Runs think() for a range of parallelThinkers, splitting the range in
+	 * half until it is small enough.
+	 */
+	private class ThinkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from, to, chunkSize;
+		private final int time;
+		
+		ThinkTask(int from, int to, int chunkSize, int time) {
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+			this.time = time;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= chunkSize) {
+				for(int i = from; i < to; i++) {
+					Slot slot = parallelThinkers[i];
+					slot.object.think(time, slot.thinkElapsedTime);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(
+						new ThinkTask(from, middle, chunkSize, time),
+						new ThinkTask(middle, to, chunkSize, time));
+			}
+		}
+	}
+	
 	public GenericGameRunner(GameApplet applet, ResourceManager resources) {
-		objects = new HashSet<>();
-		objectsToAdd = new HashSet<>();
-		objectsToRemove = new HashSet<>();
+		this(applet, resources, DEFAULT_CAPACITY);
+	}
+	
+	public GenericGameRunner(GameApplet applet, ResourceManager resources,
+			Clock clock) {
+		this(applet, resources, DEFAULT_CAPACITY, clock);
+	}
+	
+	public GenericGameRunner(GameApplet applet, ResourceManager resources,
+			int capacity) {
+		this(applet, resources, capacity, Clock.SYSTEM);
+	}
+	
+	/**
+	 * Construct a GenericGameRunner with room for a certain number of objects.
+	 * The runner will still grow past this, but the first frames won't need
+	 * to.
+	 * @param applet the PApplet for the game
+	 * @param resources the game's resources
+	 * @param capacity the number of objects to make room for
+	 * @param clock the clock to measure time with, such as Clock.SYSTEM
+	 */
+	public GenericGameRunner(GameApplet applet, ResourceManager resources,
+			int capacity, Clock clock) {
+		this.clock = clock;
+		input = new Input(clock);
+		seeds = new SplittableRandom();
+		seedSet = false;
+		seed = seeds.nextLong();
+		random = new SplittableRandom(seed);
+		recorder = null;
+		capacity = Math.max(capacity, 1);
+		slots = new IdentityHashMap<>(capacity);
+		watchers = new IdentityHashMap<>();
+		bucketsByType = new HashMap<>();
+		buckets = new Bucket[16];
+		numBuckets = 0;
+		numObjects = 0;
+		sleepingObjects = new Bucket(null, capacity);
+		timers = new TimerWheel();
+		scheduleRequests = new Slot[capacity];
+		lanesByDivisor = new HashMap<>();
+		lanes = new Lane[4];
+		numLanes = 0;
+		polledObjects = new Slot[capacity];
+		deletedObjects = new Slot[capacity];
+		objectsToAdd = new Slot[capacity];
+		objectsToStart = new Slot[capacity];
+		objectsToRemove = new Slot[capacity];
+		updateQueue = new Slot[capacity];
+		nextUpdateQueue = new Slot[capacity];
+		updatePass = 0;
+		maxUpdatePasses = DEFAULT_MAX_UPDATE_PASSES;
 		resourceManager = resources;
 		this.applet = applet;
 		speed = 1;
 		speedChanged = true;
+		tickLength = 0;
+		interpolation = 1;
+		thinkPool = null;
+		parallelThinkers = new Slot[0];
+		serialThinkers = new Slot[0];
 	}
 	
 	@Override
@@ -43,15 +373,101 @@ public class GenericGameRunner implements GameRunner {
 		return resourceManager;
 	}
 	
+	@Override
+	public JobQueue getJobs() {
+		return applet.getJobs();
+	}
+	
 	@Override
 	public int getTime() {
+		return (int)getTimeMillis();
+	}
+	
+	@Override
+	public long getTimeMillis() {
+		return currentGameTime / NANOS_PER_MILLI;
+	}
+	
+	@Override
+	public long getTimeNanos() {
 		return currentGameTime;
 	}
 	
+	@Override
+	public long getStepNanos() {
+		return stepTime;
+	}
+	
+	@Override
+	public long getStepCount() {
+		return stepCount;
+	}
+	
+	@Override
+	public Clock getClock() {
+		return clock;
+	}
+	
+	@Override
+	public Input getInput() {
+		return input;
+	}
+	
+	@Override
+	public void setSeed(long seed) {
+		this.seed = seed;
+		seedSet = true;
+	}
+	
+	@Override
+	public long getSeed() {
+		return seed;
+	}
+	
+	@Override
+	public SplittableRandom createRandom() {
+		return random.split();
+	}
+	
+	@Override
+	public void setRecorder(ReplayRecorder recorder) {
+		this.recorder = recorder;
+		input.setRecorder(recorder);
+	}
+	
+	/**
+	 * Stop recording after the log couldn't be written.
+	 */
+	void recordingFailed(IOException e) {
+		System.err.println("WARNING: Stopped recording the replay log: "
+				+ e.getMessage());
+		setRecorder(null);
+	}
+	
 	@Override
 	public void start() {
-		lastSystemTime = System.currentTimeMillis();
+		if(!seedSet)
+			seed = seeds.nextLong();
+		seedSet = false;
+		if(recorder != null) {
+			try {
+				recorder.start(seed);
+			} catch(IOException e) {
+				recordingFailed(e);
+			}
+		}
+		//keys pressed before the game started aren't for the game
+		input.clear();
+		lastClockTime = clock.nanoTime();
 		currentGameTime = 0;
+		stepTime = 0;
+		stepCount = 0;
+		timers.reset(0);
+		random = new SplittableRandom(seed);
+		timers.setRandom(random.split());
+		accumulatedTime = 0;
+		fixedGameTime = 0;
+		interpolation = 1;
 	}
 	
 	@Override
@@ -63,125 +479,827 @@ public class GenericGameRunner implements GameRunner {
 	public void setSpeed(float speed) {
 		this.speed = speed;
 		speedChanged = true;
+		if(recorder != null) {
+			try {
+				recorder.speed(speed);
+			} catch(IOException e) {
+				recordingFailed(e);
+			}
+		}
+	}
+	
+	@Override
+	public void setFixedTimestep(float ticksPerSecond, int maxStepsPerLoop) {
+		if(ticksPerSecond > 0) {
+			tickLength = NANOS_PER_SECOND / (double)ticksPerSecond;
+			this.maxStepsPerLoop = Math.max(maxStepsPerLoop, 1);
+		} else {
+			tickLength = 0;
+			interpolation = 1;
+		}
+		accumulatedTime = 0;
+		fixedGameTime = currentGameTime;
+	}
+	
+	@Override
+	public boolean isFixedTimestep() {
+		return tickLength > 0;
+	}
+	
+	@Override
+	public long getTickNanos() {
+		return (long)tickLength;
+	}
+	
+	@Override
+	public float getInterpolation() {
+		return interpolation;
+	}
+	
+	@Override
+	public void setParallelThink(ForkJoinPool pool, int threshold) {
+		thinkPool = pool;
+		parallelThinkThreshold = threshold;
+	}
+	
+	@Override
+	public void setMaxUpdatePasses(int passes) {
+		maxUpdatePasses = Math.max(passes, 1);
+	}
+	
+	@Override
+	public int getUpdatePasses() {
+		return lastUpdatePasses;
 	}
 	
 	@Override
 	public void addObject(GameObject o) {
 		if(o == null)
 			return;
-		if(objects.contains(o))
-			return;
-		if(objectsToAdd.contains(o))
-			return;
-		if(objectsToRemove.contains(o)) {
-			objectsToRemove.remove(o);
+		Slot slot = slots.get(o);
+		if(slot != null) {
+			if(slot.state == Slot.PENDING_REMOVE)
+				slot.state = Slot.ADDED;
 			return;
 		}
-		objectsToAdd.add(o);
+		slot = new Slot(o);
+		slots.put(o, slot);
+		if(numObjectsToAdd == objectsToAdd.length)
+			objectsToAdd = Arrays.copyOf(objectsToAdd, numObjectsToAdd * 2);
+		objectsToAdd[numObjectsToAdd++] = slot;
 	}
 	
 	@Override
 	public void removeObject(GameObject o) {
 		if(o == null)
 			return;
-		if(objectsToRemove.contains(o))
+		Slot slot = slots.get(o);
+		if(slot == null)
 			return;
-		if(objectsToAdd.contains(o)) {
-			objectsToAdd.remove(o);
+		switch(slot.state) {
+		case Slot.PENDING_ADD:
+			//left in objectsToAdd, but skipped
+			slot.state = Slot.REMOVED;
+			slots.remove(o);
+			break;
+		case Slot.ADDED:
+			slot.state = Slot.PENDING_REMOVE;
+			if(numObjectsToRemove == objectsToRemove.length)
+				objectsToRemove = Arrays.copyOf(objectsToRemove,
+						numObjectsToRemove * 2);
+			objectsToRemove[numObjectsToRemove++] = slot;
+			break;
+		}
+	}
+	
+	@Override
+	public void sleep(GameObject o) {
+		Slot slot = requestSlot(o);
+		if(slot == null)
 			return;
+		synchronized(scheduleLock) {
+			slot.requestedSleep = Slot.REQUEST_SLEEP;
+			slot.requestedWakeOnTime = false;
+			queueScheduleRequest(slot);
 		}
-		if(!objects.contains(o))
+	}
+	
+	@Override
+	public void sleepUntil(GameObject o, int time) {
+		Slot slot = requestSlot(o);
+		if(slot == null)
+			return;
+		synchronized(scheduleLock) {
+			slot.requestedSleep = Slot.REQUEST_SLEEP;
+			slot.requestedWakeOnTime = true;
+			slot.requestedWakeTime = time;
+			queueScheduleRequest(slot);
+		}
+	}
+	
+	@Override
+	public void wake(GameObject o) {
+		Slot slot = requestSlot(o);
+		if(slot == null)
+			return;
+		synchronized(scheduleLock) {
+			slot.requestedSleep = Slot.REQUEST_WAKE;
+			queueScheduleRequest(slot);
+		}
+	}
+	
+	@Override
+	public void setTickDivisor(GameObject o, int divisor) {
+		Slot slot = requestSlot(o);
+		if(slot == null)
+			return;
+		synchronized(scheduleLock) {
+			slot.requestedTickDivisor = Math.max(divisor, 1);
+			queueScheduleRequest(slot);
+		}
+	}
+	
+	private Slot requestSlot(GameObject o) {
+		if(o == null)
+			return null;
+		return slots.get(o);
+	}
+	
+	//must hold scheduleLock
+	private void queueScheduleRequest(Slot slot) {
+		if(slot.scheduleRequested)
 			return;
-		objectsToRemove.add(o);
+		slot.scheduleRequested = true;
+		if(numScheduleRequests == scheduleRequests.length)
+			scheduleRequests = Arrays.copyOf(scheduleRequests,
+					numScheduleRequests * 2);
+		scheduleRequests[numScheduleRequests++] = slot;
+	}
+	
+	@Override
+	public boolean isSleeping(GameObject o) {
+		Slot slot = slots.get(o);
+		return slot != null && slot.bucket == sleepingObjects;
+	}
+	
+	@Override
+	public int numSleepingObjects() {
+		return sleepingObjects.size;
+	}
+	
+	@Override
+	public GameTimer schedule(Runnable callback, int delay) {
+		GameTimer t = new GameTimer(callback);
+		timers.schedule(t, getTimeMillis() + Math.max(delay, 0));
+		return t;
+	}
+	
+	@Override
+	public GameTimer scheduleRepeating(Runnable callback, int interval,
+			int jitter) {
+		GameTimer t = new GameTimer(callback);
+		t.interval = Math.max(interval, 1);
+		t.jitter = Math.max(jitter, 0);
+		timers.schedule(t, getTimeMillis() + t.interval);
+		return t;
 	}
 	
 	@Override
 	public boolean hasObject(GameObject o) {
-		return objects.contains(o);
+		Slot slot = slots.get(o);
+		return slot != null && slot.state != Slot.PENDING_ADD;
+	}
+	
+	@Override
+	public void watchObject(GameObject o, ObjectWatcher watcher) {
+		if(o == null || watcher == null)
+			return;
+		ObjectWatcher[] list = watchers.get(o);
+		if(list == null) {
+			list = new ObjectWatcher[] { watcher };
+		} else {
+			list = Arrays.copyOf(list, list.length + 1);
+			list[list.length - 1] = watcher;
+		}
+		watchers.put(o, list);
+		if(hasObject(o))
+			watcher.objectStarted(o);
+	}
+	
+	@Override
+	public void unwatchObject(GameObject o, ObjectWatcher watcher) {
+		ObjectWatcher[] list = watchers.get(o);
+		if(list == null)
+			return;
+		for(int i = 0; i < list.length; i++) {
+			if(list[i] != watcher)
+				continue;
+			if(list.length == 1) {
+				watchers.remove(o);
+			} else {
+				ObjectWatcher[] rest = new ObjectWatcher[list.length - 1];
+				System.arraycopy(list, 0, rest, 0, i);
+				System.arraycopy(list, i + 1, rest, i, rest.length - i);
+				watchers.put(o, rest);
+			}
+			return;
+		}
+	}
+	
+	//tell the watchers of an object that it was started or removed
+	private void notifyWatchers(GameObject o, boolean started) {
+		ObjectWatcher[] list = watchers.get(o);
+		if(list == null)
+			return;
+		for(ObjectWatcher watcher : list) {
+			if(started)
+				watcher.objectStarted(o);
+			else
+				watcher.objectRemoved(o);
+		}
 	}
 	
 	@Override
 	public int numObjects() {
-		return objects.size();
+		return numObjects;
+	}
+	
+	/**
+	 * Add every awake object to a collection, in the order they are stepped.
+	 * Used by tools such as RunnerBenchmark.
+	 * @param out the collection to add to
+	 */
+	void collectAwakeObjects(Collection<? super GameObject> out) {
+		for(int b = 0; b < numBuckets; b++) {
+			Bucket bucket = buckets[b];
+			for(int i = 0; i < bucket.size; i++)
+				out.add(bucket.objects[i]);
+		}
+		for(int l = 0; l < numLanes; l++) {
+			for(Bucket bucket : lanes[l].phases) {
+				for(int i = 0; i < bucket.size; i++)
+					out.add(bucket.objects[i]);
+			}
+		}
 	}
 	
 	@Override
 	public void clearAll() {
-		objectsToAdd.clear();
-		objectsToRemove.clear();
-		objects.clear();
+		for(Slot slot : slots.values()) {
+			if(slot.state != Slot.PENDING_ADD && slot.pollIndex < 0)
+				slot.object.removeDeleteListener(deleteListener);
+			boolean started = slot.state != Slot.PENDING_ADD;
+			slot.state = Slot.REMOVED;
+			if(started)
+				notifyWatchers(slot.object, false);
+			slot.pollIndex = -1;
+		}
+		slots.clear();
+		for(int b = 0; b < numBuckets; b++)
+			buckets[b].clear();
+		for(int l = 0; l < numLanes; l++) {
+			for(Bucket phase : lanes[l].phases)
+				phase.clear();
+		}
+		sleepingObjects.clear();
+		numObjects = 0;
+		timers.reset(getTimeMillis());
+		synchronized(scheduleLock) {
+			for(int i = 0; i < numScheduleRequests; i++) {
+				scheduleRequests[i].scheduleRequested = false;
+				scheduleRequests[i] = null;
+			}
+			numScheduleRequests = 0;
+		}
+		Arrays.fill(polledObjects, 0, numPolledObjects, null);
+		numPolledObjects = 0;
+		Arrays.fill(deletedObjects, 0, numDeletedObjects, null);
+		numDeletedObjects = 0;
+		Arrays.fill(objectsToAdd, 0, numObjectsToAdd, null);
+		numObjectsToAdd = 0;
+		Arrays.fill(objectsToRemove, 0, numObjectsToRemove, null);
+		numObjectsToRemove = 0;
+		Arrays.fill(nextUpdateQueue, 0, numNextToUpdate, null);
+		numNextToUpdate = 0;
 	}
 	
 	
+	@Override
+	public void runStep(long elapsedNanos) {
+		lastUpdatePasses = 0;
+		step(Math.max(elapsedNanos, 0));
+	}
+	
 	@Override
 	public void gameLoop() {
-		int time = getTime();
-		long systemTime = System.currentTimeMillis();
-		int elapsedTime = (int)((systemTime - lastSystemTime) * speed);
+		long clockTime = clock.nanoTime();
+		lastUpdatePasses = 0;
+		
+		if(tickLength > 0) {
+			accumulatedTime += (clockTime - lastClockTime) * (double)speed;
+			int steps = 0;
+			while(accumulatedTime >= tickLength && steps < maxStepsPerLoop) {
+				//step to the rounded time of the next tick, so the fractions of
+				//a nanosecond aren't lost
+				fixedGameTime += tickLength;
+				step((long)fixedGameTime - currentGameTime);
+				accumulatedTime -= tickLength;
+				steps++;
+			}
+			if(accumulatedTime >= tickLength) {
+				//too far behind to catch up; drop the extra time instead of
+				//running more and more steps each loop
+				double dropped = Math.floor(accumulatedTime / tickLength)
+						* tickLength;
+				accumulatedTime -= dropped;
+			}
+			interpolation = (float)(accumulatedTime / tickLength);
+		} else {
+			step((long)((clockTime - lastClockTime) * (double)speed));
+		}
+		
+		lastClockTime = clockTime;
+	}
+	
+	/**
+	 * Run the delete, add, think and update steps once.
+	 * @param elapsedNanos the game time to simulate, in nanoseconds
+	 */
+	private void step(long elapsedNanos) {
+		long timeMillis = getTimeMillis();
+		int time = (int)timeMillis;
+		//objects see whole milliseconds. The step gets every millisecond that
+		//is crossed, so the fractions add up over many steps.
+		int elapsedTime = (int)((currentGameTime + elapsedNanos)
+				/ NANOS_PER_MILLI - timeMillis);
+		stepTime = elapsedNanos;
 		
 		//delete
-		//find objects that are ready to delete
-		for(GameObject o : objects) {
-			if(o.readyToDelete())
-				removeObject(o);
+		//remove objects that said they were ready to delete, and check the
+		//objects that can't say so
+		for(int i = 0; i < numDeletedObjects; i++) {
+			Slot slot = deletedObjects[i];
+			deletedObjects[i] = null;
+			if(slot.state == Slot.ADDED)
+				removeObject(slot.object);
 		}
-		for(GameObject o : objectsToAdd) {
+		numDeletedObjects = 0;
+		for(int i = 0; i < numPolledObjects; i++) {
+			GameObject o = polledObjects[i].object;
 			if(o.readyToDelete())
 				removeObject(o);
 		}
+		for(int i = 0; i < numObjectsToAdd; i++) {
+			Slot slot = objectsToAdd[i];
+			if(slot.state == Slot.PENDING_ADD && slot.object.readyToDelete())
+				removeObject(slot.object);
+		}
 		
 		//remove objects
-		objects.removeAll(objectsToRemove);
-		objectsToRemove.clear();
+		removePendingObjects();
+		
+		//input, before anything thinks, so objects see the same key state for
+		//the whole step
+		input.drain();
+		if(recorder != null) {
+			try {
+				recorder.step(elapsedNanos);
+			} catch(IOException e) {
+				recordingFailed(e);
+			}
+		}
+		
+		//sleep, wake, and tick divisors
+		applyScheduleRequests(time);
+		
+		//timers, including objects that sleep until now
+		timers.advance(timeMillis);
 		
 		if(speedChanged) {
 			speedChanged = false;
-			for(GameObject o : objects) {
-				o.speedChange(speed);
+			for(int b = 0; b < numBuckets; b++) {
+				Bucket bucket = buckets[b];
+				for(int i = 0; i < bucket.size; i++)
+					bucket.slots[i].object.speedChange(speed);
+			}
+			for(int l = 0; l < numLanes; l++) {
+				for(Bucket bucket : lanes[l].phases) {
+					for(int i = 0; i < bucket.size; i++)
+						bucket.slots[i].object.speedChange(speed);
+				}
 			}
 		}
 		
 		//think
-		for(GameObject o : objects) {
-			o.think(time, elapsedTime);
+		if(thinkPool != null && numObjects >= parallelThinkThreshold) {
+			thinkInParallel(time, elapsedTime);
+		} else {
+			for(int b = 0; b < numBuckets; b++) {
+				Bucket bucket = buckets[b];
+				bucket.stepper.think(bucket.objects, bucket.size, time,
+						elapsedTime);
+			}
+			for(int l = 0; l < numLanes; l++) {
+				Bucket bucket = currentPhase(lanes[l]);
+				for(int i = 0; i < bucket.size; i++) {
+					Slot slot = bucket.slots[i];
+					slot.object.think(time,
+							laneElapsedTime(slot, time, elapsedTime));
+				}
+			}
 		}
 		
 		//update
-		Set<GameObject> objectsToUpdate = new HashSet<>();
-		Set<GameObject> update = new HashSet<>(objects);
+		//the first pass updates every object. Later passes update the objects
+		//that asked for another update, and objects added since.
+		if(numObjectsToRemove != 0)
+			removePendingObjects();
+		if(numObjectsToAdd != 0)
+			addPendingObjects(time, elapsedTime, false);
+		updatePass++;
+		for(int b = 0; b < numBuckets; b++) {
+			Bucket bucket = buckets[b];
+			bucket.stepper.update(bucket.objects, bucket.size, updateAgain);
+		}
+		for(int l = 0; l < numLanes; l++) {
+			Bucket bucket = currentPhase(lanes[l]);
+			for(int i = 0; i < bucket.size; i++)
+				updateObject(bucket.slots[i]);
+		}
+		int passes = 1;
 		
-		while(!(update.isEmpty() && objectsToAdd.isEmpty()
-				&& objectsToRemove.isEmpty())) {
+		while(numNextToUpdate != 0 || numObjectsToAdd != 0
+				|| numObjectsToRemove != 0) {
+			if(passes == maxUpdatePasses) {
+				warnUpdateCycle();
+				break;
+			}
+			passes++;
+			updatePass++;
+			
+			Slot[] queue = nextUpdateQueue;
+			nextUpdateQueue = updateQueue;
+			updateQueue = queue;
+			numToUpdate = numNextToUpdate;
+			numNextToUpdate = 0;
+			
 			//remove objects
-			objects.removeAll(objectsToRemove);
-			objectsToRemove.clear();
+			if(numObjectsToRemove != 0)
+				removePendingObjects();
 			
 			//add
 			//add new objects
-			HashSet<GameObject> objectsToStart = new HashSet<>();
-			for(GameObject o : objectsToAdd) {
-				objects.add(o);
-				objectsToStart.add(o);
-			}
-			objectsToAdd.clear();
-			for(GameObject o : objectsToStart) {
-				o.start(time);
-				o.speedChange(speed);
-				o.think(time, elapsedTime);
-				update.add(o);
-			}
+			//objects started during this pass are updated with it
+			if(numObjectsToAdd != 0)
+				addPendingObjects(time, elapsedTime, true);
 			
-			for(GameObject o : update) {
-				Collection<GameObject> add = o.update();
-				if(add != null)
-					objectsToUpdate.addAll(add);
+			for(int i = 0; i < numToUpdate; i++) {
+				Slot slot = updateQueue[i];
+				updateQueue[i] = null;
+				if(slot.state != Slot.REMOVED
+						&& slot.bucket != sleepingObjects)
+					updateObject(slot);
 			}
+			numToUpdate = 0;
+		}
+		lastUpdatePasses = Math.max(lastUpdatePasses, passes);
+		
+		currentGameTime += elapsedNanos;
+		stepCount++;
+	}
+	
+	private Bucket currentPhase(Lane lane) {
+		return lane.phases[(int)(stepCount % lane.divisor)];
+	}
+	
+	/**
+	 * Get the elapsed time for an object with a tick divisor, which is all of
+	 * the time since it last thought.
+	 */
+	private static int laneElapsedTime(Slot slot, int time, int elapsedTime) {
+		int end = time + elapsedTime;
+		int elapsed = end - slot.thoughtUntil;
+		slot.thoughtUntil = end;
+		return elapsed;
+	}
+	
+	private void updateObject(Slot slot) {
+		Collection<GameObject> again = slot.object.update();
+		if(again != null)
+			queueAgain(again);
+	}
+	
+	/**
+	 * Queue objects that asked for another update for the next update pass.
+	 * @param again what an object's update() returned
+	 */
+	private void queueAgain(Collection<GameObject> again) {
+		for(GameObject o : again) {
+			Slot other = slots.get(o);
+			//objects that aren't in this runner can't be updated by it
+			if(other != null && other.state != Slot.PENDING_ADD)
+				queueUpdate(other, updatePass + 1);
+		}
+	}
+	
+	/**
+	 * Queue a slot to be updated in an update pass, unless it already is.
+	 * @param slot the slot to update
+	 * @param pass the pass to update it in; either the current pass or the
+	 * next one
+	 */
+	private void queueUpdate(Slot slot, long pass) {
+		if(slot.queuedPass == pass)
+			return;
+		slot.queuedPass = pass;
+		if(pass == updatePass) {
+			if(numToUpdate == updateQueue.length)
+				updateQueue = Arrays.copyOf(updateQueue, numToUpdate * 2);
+			updateQueue[numToUpdate++] = slot;
+		} else {
+			if(numNextToUpdate == nextUpdateQueue.length)
+				nextUpdateQueue = Arrays.copyOf(nextUpdateQueue,
+						numNextToUpdate * 2);
+			nextUpdateQueue[numNextToUpdate++] = slot;
+		}
+	}
+	
+	/**
+	 * Called when objects keep asking for more updates after the maximum
+	 * number of passes. The rest of the updates are dropped for this step.
+	 * Added or removed objects are left for the next step.
+	 */
+	private void warnUpdateCycle() {
+		StringBuilder names = new StringBuilder();
+		for(int i = 0; i < numNextToUpdate; i++) {
+			if(i < 8)
+				names.append(' ').append(
+						nextUpdateQueue[i].object.getClass().getName());
+			nextUpdateQueue[i] = null;
+		}
+		if(numNextToUpdate > 8)
+			names.append(" ...");
+		System.err.println("WARNING: Objects still need updates after "
+				+ maxUpdatePasses + " passes. There is probably an update "
+				+ "cycle between:" + names);
+		numNextToUpdate = 0;
+	}
+	
+	private void removePendingObjects() {
+		for(int i = 0; i < numObjectsToRemove; i++) {
+			Slot slot = objectsToRemove[i];
+			objectsToRemove[i] = null;
+			//the removal might have been cancelled by addObject()
+			if(slot.state != Slot.PENDING_REMOVE)
+				continue;
 			
-			update = new HashSet<>(objectsToUpdate);
-			objectsToUpdate = new HashSet<>();
+			slot.bucket.remove(slot);
+			numObjects--;
+			if(slot.wakeTimer != null)
+				slot.wakeTimer.cancel();
+			if(slot.pollIndex >= 0) {
+				Slot last = polledObjects[--numPolledObjects];
+				polledObjects[slot.pollIndex] = last;
+				last.pollIndex = slot.pollIndex;
+				polledObjects[numPolledObjects] = null;
+				slot.pollIndex = -1;
+			} else {
+				slot.object.removeDeleteListener(deleteListener);
+			}
+			slot.state = Slot.REMOVED;
+			slots.remove(slot.object);
+			notifyWatchers(slot.object, false);
+		}
+		numObjectsToRemove = 0;
+	}
+	
+	private void applyScheduleRequests(int time) {
+		synchronized(scheduleLock) {
+			int numWaiting = 0;
+			for(int i = 0; i < numScheduleRequests; i++) {
+				Slot slot = scheduleRequests[i];
+				scheduleRequests[i] = null;
+				if(slot.state == Slot.PENDING_ADD) {
+					//wait until the object is added
+					scheduleRequests[numWaiting++] = slot;
+					continue;
+				}
+				slot.scheduleRequested = false;
+				int sleep = slot.requestedSleep;
+				int divisor = slot.requestedTickDivisor;
+				slot.requestedSleep = Slot.REQUEST_NONE;
+				slot.requestedTickDivisor = 0;
+				if(slot.state == Slot.REMOVED)
+					continue;
+				
+				if(divisor != 0 && divisor != slot.tickDivisor) {
+					boolean sleeping = slot.bucket == sleepingObjects;
+					if(!sleeping)
+						slot.bucket.remove(slot);
+					slot.tickDivisor = divisor;
+					if(!sleeping)
+						placeActive(slot, time);
+				}
+				if(sleep == Slot.REQUEST_SLEEP)
+					putToSleep(slot, slot.requestedWakeOnTime,
+							slot.requestedWakeTime);
+				else if(sleep == Slot.REQUEST_WAKE)
+					wakeUp(slot, time);
+			}
+			numScheduleRequests = numWaiting;
+		}
+	}
+	
+	/**
+	 * Put an added, awake object in the bucket it thinks from: either the
+	 * bucket for its class, or a phase of the lane for its tick divisor.
+	 */
+	private void placeActive(Slot slot, int time) {
+		if(slot.tickDivisor > 1) {
+			laneFor(slot.tickDivisor).emptiestPhase().add(slot);
+			slot.thoughtUntil = time;
+		} else {
+			bucketFor(slot.object.getClass()).add(slot);
+		}
+	}
+	
+	private Lane laneFor(int divisor) {
+		Lane lane = lanesByDivisor.get(divisor);
+		if(lane == null) {
+			lane = new Lane(divisor, DEFAULT_CAPACITY / divisor + 1);
+			lanesByDivisor.put(divisor, lane);
+			if(numLanes == lanes.length)
+				lanes = Arrays.copyOf(lanes, numLanes * 2);
+			lanes[numLanes++] = lane;
+		}
+		return lane;
+	}
+	
+	private void putToSleep(final Slot slot, boolean wakeOnTime,
+			int wakeTime) {
+		if(slot.bucket != sleepingObjects) {
+			slot.bucket.remove(slot);
+			sleepingObjects.add(slot);
 		}
+		if(wakeOnTime) {
+			if(slot.wakeTimer == null) {
+				slot.wakeTimer = new GameTimer(new Runnable() {
+					@Override
+					public void run() {
+						wakeUp(slot, getTime());
+					}
+				});
+			}
+			//wake times are ints that wrap around, so go by the difference
+			timers.schedule(slot.wakeTimer,
+					getTimeMillis() + (wakeTime - getTime()));
+		} else if(slot.wakeTimer != null) {
+			slot.wakeTimer.cancel();
+		}
+	}
+	
+	private void wakeUp(Slot slot, int time) {
+		if(slot.wakeTimer != null)
+			slot.wakeTimer.cancel();
+		if(slot.bucket == sleepingObjects) {
+			sleepingObjects.remove(slot);
+			placeActive(slot, time);
+			//the speed might have changed while it was asleep
+			slot.object.speedChange(speed);
+		}
+	}
+	
+	/**
+	 * Add and start all objects given to addObject().
+	 * @param time the current game time
+	 * @param elapsedTime the elapsed time of this step
+	 * @param queueUpdates whether to queue the objects for the current update
+	 * pass
+	 */
+	private void addPendingObjects(int time, int elapsedTime,
+			boolean queueUpdates) {
+		//objects can add more objects when they start. Those will wait for the
+		//next pass.
+		Slot[] starting = objectsToAdd;
+		int numStarting = numObjectsToAdd;
+		objectsToAdd = objectsToStart;
+		numObjectsToAdd = 0;
+		objectsToStart = starting;
 		
-		currentGameTime += elapsedTime;
-		lastSystemTime = systemTime;
+		for(int i = 0; i < numStarting; i++) {
+			Slot slot = starting[i];
+			//the add might have been cancelled by removeObject()
+			if(slot.state != Slot.PENDING_ADD)
+				continue;
+			slot.state = Slot.ADDED;
+			placeActive(slot, time);
+			numObjects++;
+			if(!slot.object.addDeleteListener(deleteListener)) {
+				if(numPolledObjects == polledObjects.length)
+					polledObjects = Arrays.copyOf(polledObjects,
+							numPolledObjects * 2);
+				slot.pollIndex = numPolledObjects;
+				polledObjects[numPolledObjects++] = slot;
+			}
+		}
+		
+		for(int i = 0; i < numStarting; i++) {
+			Slot slot = starting[i];
+			starting[i] = null;
+			if(slot.state == Slot.REMOVED)
+				continue;
+			GameObject o = slot.object;
+			o.start(time);
+			notifyWatchers(o, true);
+			o.speedChange(speed);
+			o.think(time, elapsedTime);
+			if(queueUpdates)
+				queueUpdate(slot, updatePass);
+		}
+	}
+	
+	/**
+	 * Get the stepper for a class of object, which every runner shares.
+	 * @param type the class of the objects to step
+	 * @return the stepper
+	 */
+	static ObjectStepper stepperFor(Class<?> type) {
+		return STEPPERS.get(type);
+	}
+	
+	/**
+	 * Load a new copy of ClassStepper. Every copy runs the same code, but has
+	 * its own type profile.
+	 */
+	private static ObjectStepper newStepper() {
+		try {
+			return (ObjectStepper)STEPPER_COPIER.newCopy().getConstructor()
+					.newInstance();
+		} catch(ReflectiveOperationException e) {
+			return new ClassStepper();
+		}
+	}
+	
+	private Bucket bucketFor(Class<?> type) {
+		Bucket bucket = bucketsByType.get(type);
+		if(bucket == null) {
+			bucket = new Bucket(type, DEFAULT_CAPACITY);
+			bucketsByType.put(type, bucket);
+			if(numBuckets == buckets.length)
+				buckets = Arrays.copyOf(buckets, numBuckets * 2);
+			buckets[numBuckets++] = bucket;
+		}
+		return bucket;
+	}
+	
+	private void thinkInParallel(int time, int elapsedTime) {
+		if(parallelThinkers.length < numObjects) {
+			parallelThinkers = new Slot[numObjects * 2];
+			serialThinkers = new Slot[numObjects * 2];
+		}
+		numParallelThinkers = 0;
+		numSerialThinkers = 0;
+		for(int b = 0; b < numBuckets; b++) {
+			Bucket bucket = buckets[b];
+			for(int i = 0; i < bucket.size; i++) {
+				Slot slot = bucket.slots[i];
+				slot.thinkElapsedTime = elapsedTime;
+				addThinker(slot);
+			}
+		}
+		for(int l = 0; l < numLanes; l++) {
+			Bucket bucket = currentPhase(lanes[l]);
+			for(int i = 0; i < bucket.size; i++) {
+				Slot slot = bucket.slots[i];
+				slot.thinkElapsedTime =
+						laneElapsedTime(slot, time, elapsedTime);
+				addThinker(slot);
+			}
+		}
+		
+		//a few chunks per thread, so threads that finish early can steal work
+		int chunkSize = Math.max(numParallelThinkers
+				/ (thinkPool.getParallelism() * 4), 1);
+		try {
+			thinkPool.invoke(new ThinkTask(0, numParallelThinkers,
+					chunkSize, time));
+			
+			//these might change other objects, so wait for the parallel
+			//thinkers to finish
+			for(int i = 0; i < numSerialThinkers; i++) {
+				Slot slot = serialThinkers[i];
+				slot.object.think(time, slot.thinkElapsedTime);
+			}
+		} finally {
+			Arrays.fill(parallelThinkers, 0, numParallelThinkers, null);
+			Arrays.fill(serialThinkers, 0, numSerialThinkers, null);
+		}
+	}
+	
+	private void addThinker(Slot slot) {
+		if(slot.object.canThinkInParallel())
+			parallelThinkers[numParallelThinkers++] = slot;
+		else
+			serialThinkers[numSerialThinkers++] = slot;
 	}
 }
@@ -0,0 +1,88 @@
+package engine;
+
+import java.nio.file.Path;
+
+import engine.graphics.SpriteGroup;
+
+/**
+ * A GameApplet that never opens a window, for running simulations on machines
+ * with no display. It is never started as a sketch; instead, call load(),
+ * restart() and step() directly. Images are loaded into plain pixel buffers,
+ * sounds are silent, and nothing is drawn, but GameObjects and Sprites run the
+ * same as they do in a window.
+ * 
+ * Run the JVM with -Djava.awt.headless=true on machines with no display.
+ */
+public class HeadlessApplet extends GameApplet {
+	
+	/**
+	 * Construct a HeadlessApplet with a canvas size, that runs in real time.
+	 * Objects can still ask for the canvas size, even though nothing is drawn.
+	 * @param canvasWidth the width of the canvas
+	 * @param canvasHeight the height of the canvas
+	 */
+	public HeadlessApplet(float canvasWidth, float canvasHeight) {
+		this(canvasWidth, canvasHeight, Clock.SYSTEM);
+	}
+	
+	/**
+	 * Construct a HeadlessApplet with a canvas size and a clock. Use a
+	 * VirtualClock to run faster than real time; see BatchSimulation.
+	 * @param canvasWidth the width of the canvas
+	 * @param canvasHeight the height of the canvas
+	 * @param clock the clock for the GameRunners
+	 */
+	public HeadlessApplet(float canvasWidth, float canvasHeight, Clock clock) {
+		this(canvasWidth, canvasHeight, clock, null);
+	}
+	
+	/**
+	 * Construct a HeadlessApplet that shares its images with other games in
+	 * the same process. Each HeadlessApplet has its own GameRunners and
+	 * world, so many of them can run at once on different threads.
+	 * @param canvasWidth the width of the canvas
+	 * @param canvasHeight the height of the canvas
+	 * @param clock the clock for the GameRunners
+	 * @param assets the images to share, or null to load a copy of each
+	 */
+	public HeadlessApplet(float canvasWidth, float canvasHeight, Clock clock,
+			AssetCache assets) {
+		runHeadless(clock, assets);
+		setCanvas(canvasWidth, canvasHeight);
+	}
+	
+	/**
+	 * Load resources and create the GameRunners. See initializeGlobal().
+	 * @param resources the path to the game resource directory
+	 * @param config the path to the game configuration file
+	 */
+	public void load(Path resources, Path config) {
+		initializeGlobal(resources, config);
+	}
+	
+	/**
+	 * Start a new instance of the game. See initializeGame().
+	 */
+	public void restart() {
+		initializeGame();
+	}
+	
+	/**
+	 * Go through one loop of the game, without drawing anything.
+	 */
+	public void step() {
+		gameLoop();
+	}
+	
+	public GameRunner getRunner() {
+		return runner;
+	}
+	
+	public GameRunner getGlobalRunner() {
+		return globalRunner;
+	}
+	
+	public SpriteGroup getSpriteGroup() {
+		return group;
+	}
+}
@@ -0,0 +1,167 @@
+package engine;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Collects input events for a GameRunner. Events can be posted from any
+ * thread without locking. At the start of each step, the GameRunner handles
+ * every event posted so far in order: it calls the InputListeners and updates
+ * the key state. The key state then stays the same for the rest of the step,
+ * so objects can read it in think().
+ */
+public class Input {
+	//key codes at or above this aren't tracked in the key state
+	private static final int NUM_KEY_CODES = 1024;
+	
+	private final Clock clock;
+	
+	//a multiple-producer, single-consumer queue. Producers swap themselves
+	//into tail, then link the previous tail to themselves. The consumer
+	//follows the links from head, which is the last event handled.
+	private final AtomicReference<InputEvent> tail;
+	private InputEvent head;
+	
+	private final long[] keysDown;
+	private final long[] keysPressed;
+	private final long[] keysReleased;
+	
+	private final List<InputListener> listeners;
+	private ReplayRecorder recorder;
+	
+	public Input(Clock clock) {
+		this.clock = clock;
+		head = new InputEvent(InputEvent.Type.KEY_RELEASED, '\0', -1, 0);
+		tail = new AtomicReference<>(head);
+		keysDown = new long[NUM_KEY_CODES / 64];
+		keysPressed = new long[NUM_KEY_CODES / 64];
+		keysReleased = new long[NUM_KEY_CODES / 64];
+		listeners = new ArrayList<>();
+	}
+	
+	/**
+	 * Post an event to be handled at the start of the next step. This can be
+	 * called from any thread.
+	 * @param e the event
+	 */
+	public void post(InputEvent e) {
+		e.next = null;
+		InputEvent previous = tail.getAndSet(e);
+		previous.next = e;
+	}
+	
+	/**
+	 * Post an event that is happening now. This can be called from any thread.
+	 * @param type whether the key was pressed or released
+	 * @param key the character of the key
+	 * @param keyCode the key code
+	 */
+	public void post(InputEvent.Type type, char key, int keyCode) {
+		post(new InputEvent(type, key, keyCode, clock.nanoTime()));
+	}
+	
+	/**
+	 * Add a listener to be called for each event. Should only be called from
+	 * the thread that runs the GameRunner.
+	 * @param l the listener
+	 */
+	public void addListener(InputListener l) {
+		if(!listeners.contains(l))
+			listeners.add(l);
+	}
+	
+	public void removeListener(InputListener l) {
+		listeners.remove(l);
+	}
+	
+	void setRecorder(ReplayRecorder recorder) {
+		this.recorder = recorder;
+	}
+	
+	/**
+	 * Handle every event posted so far. Called by the GameRunner at the start
+	 * of each step.
+	 */
+	void drain() {
+		Arrays.fill(keysPressed, 0);
+		Arrays.fill(keysReleased, 0);
+		InputEvent e = head.next;
+		while(e != null) {
+			head = e;
+			if(recorder != null) {
+				try {
+					recorder.input(e);
+				} catch(IOException ex) {
+					System.err.println("WARNING: Stopped recording input: "
+							+ ex.getMessage());
+					recorder = null;
+				}
+			}
+			for(int i = 0; i < listeners.size(); i++)
+				listeners.get(i).input(e, this);
+			int code = e.getKeyCode();
+			if(code >= 0 && code < NUM_KEY_CODES) {
+				long bit = 1L << (code & 63);
+				if(e.getType() == InputEvent.Type.KEY_PRESSED) {
+					if((keysDown[code >> 6] & bit) == 0)
+						keysPressed[code >> 6] |= bit;
+					keysDown[code >> 6] |= bit;
+				} else {
+					keysDown[code >> 6] &= ~bit;
+					keysReleased[code >> 6] |= bit;
+				}
+			}
+			e = e.next;
+		}
+	}
+	
+	/**
+	 * Drop every event posted so far without handling it, and treat every key
+	 * as up. Called by the GameRunner when it starts.
+	 */
+	void clear() {
+		InputEvent e = head.next;
+		while(e != null) {
+			head = e;
+			e = e.next;
+		}
+		Arrays.fill(keysDown, 0);
+		Arrays.fill(keysPressed, 0);
+		Arrays.fill(keysReleased, 0);
+	}
+	
+	/**
+	 * Check if a key is held down.
+	 * @param keyCode the key code, like PConstants.UP
+	 * @return true if the key is down
+	 */
+	public boolean isKeyDown(int keyCode) {
+		return hasKey(keysDown, keyCode);
+	}
+	
+	/**
+	 * Check if a key was pressed during the events handled for this step. Keys
+	 * that repeat while they are held down don't count.
+	 * @param keyCode the key code
+	 * @return true if the key went down
+	 */
+	public boolean wasKeyPressed(int keyCode) {
+		return hasKey(keysPressed, keyCode);
+	}
+	
+	/**
+	 * Check if a key was released during the events handled for this step.
+	 * @param keyCode the key code
+	 * @return true if the key went up
+	 */
+	public boolean wasKeyReleased(int keyCode) {
+		return hasKey(keysReleased, keyCode);
+	}
+	
+	private static boolean hasKey(long[] keys, int keyCode) {
+		if(keyCode < 0 || keyCode >= NUM_KEY_CODES)
+			return false;
+		return (keys[keyCode >> 6] & (1L << (keyCode & 63))) != 0;
+	}
+}
@@ -0,0 +1,55 @@
+package engine;
+
+/**
+ * A key being pressed or released, with the time it happened. InputEvents are
+ * posted to an Input from any thread, and handled by the GameRunner at the
+ * start of its next step.
+ */
+public final class InputEvent {
+	public enum Type {
+		KEY_PRESSED, KEY_RELEASED
+	}
+	
+	private final Type type;
+	private final char key;
+	private final int keyCode;
+	private final long time;
+	
+	//the next event in the Input's queue
+	volatile InputEvent next;
+	
+	/**
+	 * Construct an InputEvent.
+	 * @param type whether the key was pressed or released
+	 * @param key the character of the key, or PConstants.CODED for keys
+	 * without a character
+	 * @param keyCode the key code, like PConstants.UP
+	 * @param time the clock time the event happened, in nanoseconds
+	 */
+	public InputEvent(Type type, char key, int keyCode, long time) {
+		this.type = type;
+		this.key = key;
+		this.keyCode = keyCode;
+		this.time = time;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	public char getKey() {
+		return key;
+	}
+	
+	public int getKeyCode() {
+		return keyCode;
+	}
+	
+	/**
+	 * Get the time the event happened.
+	 * @return the time from the runner's Clock, in nanoseconds
+	 */
+	public long getTime() {
+		return time;
+	}
+}
@@ -0,0 +1,16 @@
+package engine;
+
+/**
+ * Handles input events from an Input. Listeners are called on the thread that
+ * runs the GameRunner, at the start of a step, so they can safely change game
+ * objects.
+ */
+public interface InputListener {
+	/**
+	 * Handle an input event. The key state of the Input doesn't include this
+	 * event yet, so a key that is already down was pressed before.
+	 * @param e the event
+	 * @param input the Input the event came from
+	 */
+	public void input(InputEvent e, Input input);
+}
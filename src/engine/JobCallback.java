@@ -0,0 +1,21 @@
+package engine;
+
+/**
+ * Receives the result of a job from a JobQueue. Callbacks are called on the
+ * main thread, while the simulation is paused, so they can safely change game
+ * objects.
+ * @param <T> the type of the result
+ */
+public interface JobCallback<T> {
+	/**
+	 * Called when the job has finished.
+	 * @param result what the job returned
+	 */
+	public void finished(T result);
+	
+	/**
+	 * Called instead of finished() if the job threw an exception or error.
+	 * @param error what the job threw
+	 */
+	public void failed(Throwable error);
+}
@@ -0,0 +1,201 @@
+package engine;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs slow work, like loading files, on a pool of worker threads, and hands
+ * the results back to the main thread. Once per frame, the main thread calls
+ * runCallbacks(), which runs the callbacks of finished jobs until a time budget
+ * for the frame is used up. The rest wait for the next frame, so many jobs
+ * finishing at once don't freeze the game.
+ * 
+ * Jobs finish in their own time, so the game should not let them change
+ * anything that has to replay exactly.
+ *
+ * Games running in the same process can share one pool of worker threads
+ * with share(). Each game still gets its own callbacks and budget.
+ */
+public class JobQueue {
+	private static final float DEFAULT_BUDGET = 4;
+	
+	private final ExecutorService workers;
+	//false for queues made by share(), which leave the workers running
+	private final boolean ownsWorkers;
+	//callbacks of finished jobs, in the order they finished
+	private final Queue<Runnable> callbacks;
+	private final AtomicInteger numRunning;
+	private long budgetNanos;
+	private long callbacksRun;
+	private long framesOverBudget;
+	
+	/**
+	 * Create a JobQueue with a new pool of worker threads.
+	 * @param numWorkers the number of jobs that can run at once
+	 */
+	public JobQueue(int numWorkers) {
+		this(new ForkJoinPool(Math.max(numWorkers, 1)));
+	}
+	
+	/**
+	 * @param workers the threads to run jobs on. shutdown() shuts them down.
+	 */
+	public JobQueue(ExecutorService workers) {
+		this(workers, true);
+	}
+	
+	private JobQueue(ExecutorService workers, boolean ownsWorkers) {
+		this.workers = workers;
+		this.ownsWorkers = ownsWorkers;
+		callbacks = new ConcurrentLinkedQueue<>();
+		numRunning = new AtomicInteger();
+		setBudget(DEFAULT_BUDGET);
+		callbacksRun = 0;
+		framesOverBudget = 0;
+	}
+	
+	/**
+	 * Create a JobQueue that runs its jobs on the same worker threads as this
+	 * one. It has its own callbacks, budget and counts, so each game that
+	 * shares the workers only runs its own callbacks.
+	 * @return the new JobQueue. Its shutdown() leaves the workers running.
+	 */
+	public JobQueue share() {
+		JobQueue shared = new JobQueue(workers, false);
+		shared.budgetNanos = budgetNanos;
+		return shared;
+	}
+	
+	/**
+	 * Set how long runCallbacks() can spend each frame. At least one callback
+	 * is always run, so a callback that takes longer than this still runs.
+	 * @param millis the budget in milliseconds
+	 */
+	public void setBudget(float millis) {
+		budgetNanos = (long)(millis * 1000000);
+	}
+	
+	/**
+	 * @return the time runCallbacks() can spend each frame, in milliseconds
+	 */
+	public float getBudget() {
+		return budgetNanos / 1000000.0f;
+	}
+	
+	/**
+	 * Run a job on a worker thread. This can be called from any thread.
+	 * @param job the work to do. It must not change the game, since the game
+	 * keeps running while it does.
+	 * @param callback called on the main thread with the result, or null
+	 * @param <T> the type of the result
+	 */
+	public <T> void submit(final Callable<T> job,
+			final JobCallback<T> callback) {
+		numRunning.incrementAndGet();
+		workers.execute(new Runnable() {
+			@Override
+			public void run() {
+				Runnable done;
+				try {
+					final T result = job.call();
+					done = new Runnable() {
+						@Override
+						public void run() {
+							if(callback != null)
+								callback.finished(result);
+						}
+					};
+				} catch(final Throwable e) {
+					done = new Runnable() {
+						@Override
+						public void run() {
+							if(callback != null) {
+								callback.failed(e);
+							} else {
+								System.err.println("WARNING: A job failed:");
+								e.printStackTrace();
+							}
+						}
+					};
+				}
+				callbacks.add(done);
+				numRunning.decrementAndGet();
+			}
+		});
+	}
+	
+	/**
+	 * Run something on the main thread at the next call to runCallbacks().
+	 * This can be called from any thread.
+	 * @param callback what to run
+	 */
+	public void post(Runnable callback) {
+		callbacks.add(callback);
+	}
+	
+	/**
+	 * Run waiting callbacks until the budget for this frame is used up. This
+	 * should be called once per frame from the main thread.
+	 */
+	public void runCallbacks() {
+		if(callbacks.isEmpty())
+			return;
+		long start = System.nanoTime();
+		Runnable callback;
+		while((callback = callbacks.poll()) != null) {
+			callback.run();
+			callbacksRun++;
+			if(System.nanoTime() - start >= budgetNanos)
+				break;
+		}
+		if(!callbacks.isEmpty())
+			framesOverBudget++;
+	}
+	
+	/**
+	 * @return the number of jobs that haven't finished yet
+	 */
+	public int numRunning() {
+		return numRunning.get();
+	}
+	
+	/**
+	 * @return the number of callbacks waiting for runCallbacks()
+	 */
+	public int numWaiting() {
+		return callbacks.size();
+	}
+	
+	/**
+	 * @return whether every job has finished and its callback has run
+	 */
+	public boolean isIdle() {
+		return numRunning.get() == 0 && callbacks.isEmpty();
+	}
+	
+	/**
+	 * @return the number of callbacks run so far
+	 */
+	public long getCallbacksRun() {
+		return callbacksRun;
+	}
+	
+	/**
+	 * @return the number of frames that ran out of budget before every
+	 * callback could run
+	 */
+	public long getFramesOverBudget() {
+		return framesOverBudget;
+	}
+	
+	/**
+	 * Stop the worker threads, unless this queue was made by share(). Jobs
+	 * that have started still finish, but their callbacks won't run unless
+	 * runCallbacks() is called.
+	 */
+	public void shutdown() {
+		if(ownsWorkers)
+			workers.shutdown();
+	}
+}
@@ -0,0 +1,222 @@
+package engine;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import engine.graphics.SpriteGroup;
+
+/**
+ * Keeps objects that have been deleted from a GameRunner, so they can be used
+ * again instead of creating new ones. Objects from obtain() are added to the
+ * runner and sprite groups as usual. When they are ready to delete, the pool
+ * waits until the runner and sprite groups have removed them, then resets
+ * them and gives them out again. If the objects are drawn by a sprite group,
+ * the pool also waits until the group has drawn a snapshot taken after they
+ * were removed, since the draw thread can be behind the simulation.
+ * 
+ * Objects that can't notify DeleteListeners have to be given back with
+ * release(). ObjectPool is not thread-safe, and should only be used by the
+ * thread that runs the GameRunner.
+ * @param <T> the type of object to keep
+ */
+public class ObjectPool<T extends GameObject & Poolable> {
+	//steps to wait before using a deleted object again. The runner removes it
+	//in the next step, and sprite groups remove it by the end of that step.
+	private static final int RECYCLE_STEPS = 2;
+	
+	private final GameRunner runner;
+	//the group whose snapshots draw the objects, or null
+	private final SpriteGroup group;
+	private final Supplier<T> factory;
+	private final ArrayDeque<T> free;
+	//deleted objects waiting to be removed, in the order they were deleted,
+	//with the step they were deleted in, and the last snapshot generation
+	//that could hold them, or -1 until they have been removed
+	private Object[] waiting;
+	private long[] waitingSteps;
+	private long[] waitingGenerations;
+	private int firstWaiting;
+	private int numWaiting;
+	private long hits;
+	private long misses;
+	
+	private final DeleteListener deleteListener = new DeleteListener() {
+		@Override
+		public void readyToDelete(GameObject o) {
+			addWaiting(o);
+		}
+	};
+	
+	/**
+	 * @param runner the runner that the objects are added to
+	 * @param factory creates new objects when the pool is empty
+	 */
+	public ObjectPool(GameRunner runner, Supplier<T> factory) {
+		this(runner, null, factory);
+	}
+	
+	/**
+	 * @param runner the runner that the objects are added to
+	 * @param group the group that draws the objects. Deleted objects aren't
+	 * used again until it has drawn past every snapshot that could hold them.
+	 * Groups inside it are in its snapshots, so this should be the group that
+	 * is drawn.
+	 * @param factory creates new objects when the pool is empty
+	 */
+	public ObjectPool(GameRunner runner, SpriteGroup group,
+			Supplier<T> factory) {
+		this.runner = runner;
+		this.group = group;
+		this.factory = factory;
+		free = new ArrayDeque<>();
+		waiting = new Object[16];
+		waitingSteps = new long[16];
+		waitingGenerations = new long[16];
+		firstWaiting = 0;
+		numWaiting = 0;
+		hits = 0;
+		misses = 0;
+	}
+	
+	/**
+	 * Create objects until the pool has enough free ones, so the first ones
+	 * given out don't have to be created during the game.
+	 * @param size the number of free objects to have
+	 */
+	public void prewarm(int size) {
+		while(free.size() < size)
+			free.add(factory.get());
+	}
+	
+	/**
+	 * Get an object that isn't being used, or create a new one. The object is
+	 * reset, but not added to the runner.
+	 * @return the object
+	 */
+	public T obtain() {
+		recycle();
+		T o = free.pollLast();
+		if(o == null) {
+			misses++;
+			o = factory.get();
+		} else {
+			hits++;
+			o.reset();
+		}
+		o.addDeleteListener(deleteListener);
+		return o;
+	}
+	
+	/**
+	 * Give an object back to the pool, for objects that can't notify
+	 * DeleteListeners. It is used again once the runner has removed it.
+	 * @param o the object, which must be deleted or removed from the runner
+	 */
+	public void release(T o) {
+		o.removeDeleteListener(deleteListener);
+		addWaiting(o);
+	}
+	
+	private void addWaiting(GameObject o) {
+		if(numWaiting == waiting.length) {
+			//unwrap the ring, so it can grow at the end
+			Object[] objects = new Object[numWaiting * 2];
+			long[] steps = new long[numWaiting * 2];
+			long[] generations = new long[numWaiting * 2];
+			for(int i = 0; i < numWaiting; i++) {
+				int index = (firstWaiting + i) % waiting.length;
+				objects[i] = waiting[index];
+				steps[i] = waitingSteps[index];
+				generations[i] = waitingGenerations[index];
+			}
+			waiting = objects;
+			waitingSteps = steps;
+			waitingGenerations = generations;
+			firstWaiting = 0;
+		}
+		int index = (firstWaiting + numWaiting) % waiting.length;
+		waiting[index] = o;
+		waitingSteps[index] = runner.getStepCount();
+		waitingGenerations[index] = -1;
+		numWaiting++;
+	}
+	
+	//move waiting objects that have been removed to the free objects
+	@SuppressWarnings("unchecked")
+	private void recycle() {
+		long step = runner.getStepCount();
+		while(numWaiting != 0) {
+			long deletedStep = waitingSteps[firstWaiting];
+			//a smaller step count means the runner was started again, which
+			//removed everything
+			if(step >= deletedStep && step - deletedStep < RECYCLE_STEPS)
+				break;
+			if(group != null) {
+				//every snapshot published so far could hold the object, and
+				//the ones after won't, since the group has removed it
+				long generation = waitingGenerations[firstWaiting];
+				if(generation < 0) {
+					generation = group.getPublishedGeneration();
+					waitingGenerations[firstWaiting] = generation;
+				}
+				//0 means nothing was published, like when running headless
+				if(generation != 0 && group.getDrawnGeneration() <= generation)
+					break;
+			}
+			T o = (T)waiting[firstWaiting];
+			waiting[firstWaiting] = null;
+			firstWaiting = (firstWaiting + 1) % waiting.length;
+			numWaiting--;
+			//objects that were added again are in use
+			if(!runner.hasObject(o))
+				free.add(o);
+		}
+	}
+	
+	/**
+	 * Forget every free and waiting object.
+	 */
+	public void clear() {
+		free.clear();
+		Arrays.fill(waiting, null);
+		firstWaiting = 0;
+		numWaiting = 0;
+	}
+	
+	/**
+	 * @return the number of objects that can be given out without creating
+	 * new ones
+	 */
+	public int numFree() {
+		return free.size();
+	}
+	
+	/**
+	 * @return the number of deleted objects waiting to be removed before they
+	 * can be used again
+	 */
+	public int numWaiting() {
+		return numWaiting;
+	}
+	
+	/**
+	 * @return the number of times obtain() gave out an object from the pool
+	 */
+	public long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * @return the number of times obtain() had to create a new object
+	 */
+	public long getMisses() {
+		return misses;
+	}
+	
+	@Override
+	public String toString() {
+		return free.size() + " free, " + numWaiting + " waiting, "
+				+ hits + " hits, " + misses + " misses";
+	}
+}
@@ -0,0 +1,39 @@
+package engine;
+
+import java.util.Collection;
+
+/**
+ * Runs the think and update steps over an array of objects that are all of the
+ * same class. GenericGameRunner gives each class of object its own stepper, so
+ * the calls in each stepper's loops only ever see one class.
+ * @see ClassStepper
+ */
+public interface ObjectStepper {
+	/**
+	 * Call think() on each object.
+	 * @param objects the objects to step. Only the first size are used.
+	 * @param size the number of objects
+	 * @param time the current game time, in millis
+	 * @param elapsedTime the elapsed time since the last step, in millis
+	 */
+	void think(GameObject[] objects, int size, int time, int elapsedTime);
+	
+	/**
+	 * Call update() on each object, and pass on what each one returns.
+	 * @param objects the objects to step. Only the first size are used.
+	 * @param size the number of objects
+	 * @param again receives the objects that need to be updated again
+	 */
+	void update(GameObject[] objects, int size, UpdateQueue again);
+	
+	/**
+	 * Receives the objects that update() returned.
+	 */
+	interface UpdateQueue {
+		/**
+		 * Queue objects to be updated again.
+		 * @param objects the objects that need another update. Never null.
+		 */
+		void updateAgain(Collection<GameObject> objects);
+	}
+}
@@ -0,0 +1,24 @@
+package engine;
+
+/**
+ * Receives a notice when a GameRunner starts an object, and when it removes
+ * one, so that whatever keeps track of the object doesn't have to ask the
+ * runner about it.
+ * @see GameRunner#watchObject(GameObject, ObjectWatcher)
+ */
+public interface ObjectWatcher {
+	/**
+	 * Called after the runner has called the object's start(), or right away
+	 * when the watcher is added if the object has already been started.
+	 * @param o the object that was started
+	 */
+	void objectStarted(GameObject o);
+	
+	/**
+	 * Called when the runner removes a started object, including when the
+	 * object is deleted and when the runner is cleared. If the object is
+	 * added again, objectStarted() is called again.
+	 * @param o the object that was removed
+	 */
+	void objectRemoved(GameObject o);
+}
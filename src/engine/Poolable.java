@@ -0,0 +1,13 @@
+package engine;
+
+/**
+ * An object that an ObjectPool can use again after it is deleted.
+ */
+public interface Poolable {
+	/**
+	 * Put the object back into the state it had when it was constructed. The
+	 * object forgets its delete listeners, and can be added to a GameRunner
+	 * again.
+	 */
+	void reset();
+}
@@ -0,0 +1,183 @@
+package engine;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Plays back a log written by a ReplayRecorder. The log is read through a
+ * memory-mapped window that moves along the file, so logs of any length can
+ * be played without reading them into memory. Steps are run as fast as
+ * possible, without waiting for real time to pass.
+ */
+public class ReplayPlayer implements Closeable {
+	//the most of the file that is mapped at once
+	private static final long WINDOW_SIZE = 64L << 20;
+	
+	private final FileChannel channel;
+	private final long size;
+	private final int width;
+	private final int height;
+	
+	private MappedByteBuffer window;
+	//the position of the window in the file
+	private long windowStart;
+	
+	private long steps;
+	private long simulatedTime;
+	private long wallTime;
+	
+	/**
+	 * Open a log to play.
+	 * @param file the log file
+	 * @throws IOException if the file can't be read, or isn't a replay log
+	 */
+	public ReplayPlayer(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		size = channel.size();
+		map(0);
+		if(size < 13 || window.getInt() != ReplayRecorder.MAGIC) {
+			channel.close();
+			throw new IOException(file + " is not a replay log");
+		}
+		int version = window.get();
+		if(version != ReplayRecorder.VERSION) {
+			channel.close();
+			throw new IOException("Unknown replay log version " + version);
+		}
+		width = window.getInt();
+		height = window.getInt();
+	}
+	
+	/**
+	 * Get the width of the window the log was recorded with.
+	 * @return the width, in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Play the whole log into a game.
+	 * @param game the game to play into. It is restarted each time the
+	 * recorded game was.
+	 * @throws IOException if the file can't be read, or ends in the middle of
+	 * a record
+	 */
+	public void play(Replayable game) throws IOException {
+		GameRunner runner = null;
+		long stepLength = 0;
+		long inputTime = 0;
+		long startWallTime = System.nanoTime();
+		try {
+			while(true) {
+				if(window.remaining() < ReplayRecorder.MAX_RECORD_SIZE)
+					map(windowStart + window.position());
+				if(!window.hasRemaining())
+					break;
+				int record = window.get();
+				switch(record) {
+				case ReplayRecorder.START:
+					if(runner != null)
+						simulatedTime += runner.getTimeNanos();
+					runner = game.restartForReplay(window.getLong());
+					break;
+				case ReplayRecorder.STEP:
+				case ReplayRecorder.STEP_SAME:
+					if(record == ReplayRecorder.STEP)
+						stepLength = readNumber();
+					if(runner != null) {
+						runner.runStep(stepLength);
+						steps++;
+					}
+					break;
+				case ReplayRecorder.SPEED:
+					float speed = window.getFloat();
+					if(runner != null)
+						runner.setSpeed(speed);
+					break;
+				case ReplayRecorder.KEY_PRESSED:
+				case ReplayRecorder.KEY_RELEASED:
+					char key = window.getChar();
+					int keyCode = (int)readNumber();
+					inputTime += readNumber();
+					if(runner != null)
+						runner.getInput().post(new InputEvent(
+								record == ReplayRecorder.KEY_PRESSED
+								? InputEvent.Type.KEY_PRESSED
+								: InputEvent.Type.KEY_RELEASED,
+								key, keyCode, inputTime));
+					break;
+				default:
+					throw new IOException("Unknown replay record " + record);
+				}
+			}
+		} catch(BufferUnderflowException e) {
+			throw new IOException("Replay log ends in the middle of a record");
+		}
+		if(runner != null)
+			simulatedTime += runner.getTimeNanos();
+		wallTime += System.nanoTime() - startWallTime;
+	}
+	
+	private long readNumber() {
+		long n = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = window.get();
+			n |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		} while((b & 0x80) != 0);
+		return n;
+	}
+	
+	private void map(long position) throws IOException {
+		windowStart = position;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+				Math.min(WINDOW_SIZE, size - position));
+	}
+	
+	/**
+	 * Get the number of steps that have been played.
+	 * @return the number of steps
+	 */
+	public long getSteps() {
+		return steps;
+	}
+	
+	/**
+	 * Get the game time that has been played.
+	 * @return the game time, in seconds
+	 */
+	public double getSimulatedSeconds() {
+		return simulatedTime / (double)GenericGameRunner.NANOS_PER_SECOND;
+	}
+	
+	/**
+	 * Get the real time that playing took.
+	 * @return the real time, in seconds
+	 */
+	public double getWallSeconds() {
+		return wallTime / (double)GenericGameRunner.NANOS_PER_SECOND;
+	}
+	
+	@Override
+	public String toString() {
+		double wallSeconds = getWallSeconds();
+		return String.format("Replayed %d steps, %.1f game seconds in %.2f "
+				+ "seconds (%.1f game seconds per second)", steps,
+				getSimulatedSeconds(), wallSeconds,
+				wallSeconds > 0 ? getSimulatedSeconds() / wallSeconds : 0);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,101 @@
+package engine;
+
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Records everything needed to replay a GameRunner into a compact binary log:
+ * the seed each time it is started, the length of every step, speed changes,
+ * and input events. A ReplayPlayer can play the log back into a new game, which
+ * then runs the same steps as the recorded one.
+ * 
+ * Step lengths and times are written as variable-length numbers, and a step
+ * that is the same length as the one before takes a single byte, so a game with
+ * a fixed timestep records about a byte per step.
+ */
+public class ReplayRecorder implements Closeable {
+	static final int MAGIC = 0x43455250; //"CERP"
+	static final int VERSION = 1;
+	
+	static final int START = 1;
+	static final int STEP = 2;
+	static final int STEP_SAME = 3;
+	static final int SPEED = 4;
+	static final int KEY_PRESSED = 5;
+	static final int KEY_RELEASED = 6;
+	//the most bytes a record can take
+	static final int MAX_RECORD_SIZE = 32;
+	
+	private final DataOutputStream out;
+	private long lastStepLength;
+	private long lastInputTime;
+	
+	/**
+	 * Start recording to a file. The file is replaced if it exists.
+	 * @param file the file to write
+	 * @param width the width of the window, so replays can use the same one
+	 * @param height the height of the window
+	 * @throws IOException if the file can't be written
+	 */
+	public ReplayRecorder(Path file, int width, int height) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeInt(width);
+		out.writeInt(height);
+		lastStepLength = -1;
+		lastInputTime = 0;
+	}
+	
+	void start(long seed) throws IOException {
+		out.writeByte(START);
+		out.writeLong(seed);
+	}
+	
+	void step(long elapsedNanos) throws IOException {
+		if(elapsedNanos == lastStepLength) {
+			out.writeByte(STEP_SAME);
+		} else {
+			out.writeByte(STEP);
+			writeNumber(elapsedNanos);
+			lastStepLength = elapsedNanos;
+		}
+	}
+	
+	void speed(float speed) throws IOException {
+		out.writeByte(SPEED);
+		out.writeFloat(speed);
+	}
+	
+	void input(InputEvent e) throws IOException {
+		out.writeByte(e.getType() == InputEvent.Type.KEY_PRESSED
+				? KEY_PRESSED : KEY_RELEASED);
+		out.writeChar(e.getKey());
+		writeNumber(e.getKeyCode() & 0xFFFFFFFFL);
+		//times only go forward, so write the difference
+		writeNumber(Math.max(e.getTime() - lastInputTime, 0));
+		lastInputTime = e.getTime();
+	}
+	
+	private void writeNumber(long n) throws IOException {
+		while((n & ~0x7FL) != 0) {
+			out.writeByte((int)(n & 0x7F) | 0x80);
+			n >>>= 7;
+		}
+		out.writeByte((int)n);
+	}
+	
+	/**
+	 * Write anything that is buffered to the file.
+	 * @throws IOException if the file can't be written
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,15 @@
+package engine;
+
+/**
+ * A game that can be replayed from a log recorded by a ReplayRecorder.
+ */
+public interface Replayable {
+	/**
+	 * Start a new game, the same way the recorded game was started. This is
+	 * called each time the log says the main GameRunner was started. The
+	 * runner must be given the seed with setSeed() before it is started.
+	 * @param seed the seed the recorded runner was started with
+	 * @return the main GameRunner, which the rest of the log is played into
+	 */
+	public GameRunner restartForReplay(long seed);
+}
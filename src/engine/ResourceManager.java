@@ -1,7 +1,10 @@
 package engine;
 
 import java.util.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.nio.file.*;
+import javax.imageio.ImageIO;
 import processing.core.*;
 import engine.sound.Sound;
 
@@ -10,7 +13,9 @@ import engine.sound.Sound;
  * A ResourceManager keeps track of game resources. A resource can be a game
  * asset, or a value used in the game.
  * 
- * ResourceManager uses a PApplet to load image and sound files.
+ * ResourceManager uses a PApplet to load image and sound files. Without a
+ * PApplet, such as when running headless, images are loaded into plain pixel
+ * buffers instead, and sounds are silent.
  * 
  * Types of resources:
  * - Flag (boolean)
@@ -23,6 +28,8 @@ import engine.sound.Sound;
  */
 public class ResourceManager {
 	PApplet a;
+	//shared images for headless ResourceManagers. May be null.
+	private final AssetCache assets;
 	
 	private final Path resourceDirectory;
 	
@@ -33,7 +40,13 @@ public class ResourceManager {
 	Map<String, Path> sounds;
 	
 	public ResourceManager(PApplet applet, Path resourceDir) {
+		this(applet, resourceDir, null);
+	}
+	
+	private ResourceManager(PApplet applet, Path resourceDir,
+			AssetCache assets) {
 		a = applet;
+		this.assets = assets;
 		flags = new HashMap<>();
 		numbers = new HashMap<>();
 		strings = new HashMap<>();
@@ -42,6 +55,26 @@ public class ResourceManager {
 		resourceDirectory = resourceDir.toAbsolutePath();
 	}
 	
+	/**
+	 * Construct a ResourceManager that works without a PApplet or a display.
+	 * Images are read with ImageIO, and can't be loaded into a graphics card.
+	 * @param resourceDir the directory to load resource files from
+	 */
+	public ResourceManager(Path resourceDir) {
+		this(null, resourceDir, null);
+	}
+	
+	/**
+	 * Construct a ResourceManager that works without a PApplet or a display,
+	 * and shares its images with other ResourceManagers.
+	 * @param resourceDir the directory to load resource files from
+	 * @param assets the images to share. Images are only loaded if they
+	 * aren't already there.
+	 */
+	public ResourceManager(Path resourceDir, AssetCache assets) {
+		this(null, resourceDir, assets);
+	}
+	
 	public boolean hasResource(String name) {
 		return flags.containsKey(name)
 				|| numbers.containsKey(name)
@@ -101,12 +134,37 @@ public class ResourceManager {
 	}
 	
 	public void addImage(String name, String path) {
-		PImage image = a.loadImage(resourceDirectory.resolve(path).toString());
+		Path file = resourceDirectory.resolve(path);
+		PImage image;
+		if(a != null)
+			image = a.loadImage(file.toString());
+		else if(assets != null)
+			image = assets.getImage(file);
+		else
+			image = readImage(file);
 		if(image == null)
 			return;
 		images.put(name, image);
 	}
 	
+	static PImage readImage(Path file) {
+		BufferedImage buffer;
+		try {
+			buffer = ImageIO.read(file.toFile());
+		} catch(IOException e) {
+			buffer = null;
+		}
+		if(buffer == null) {
+			System.err.println("Could not load image " + file);
+			return null;
+		}
+		int width = buffer.getWidth();
+		int height = buffer.getHeight();
+		PImage image = new PImage(width, height, PConstants.ARGB);
+		buffer.getRGB(0, 0, width, height, image.pixels, 0, width);
+		return image;
+	}
+	
 	public PImage getImage(String name) {
 		if(!images.containsKey(name))
 			throw new ResourceNotFoundError(name, "image");
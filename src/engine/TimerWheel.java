@@ -0,0 +1,211 @@
+package engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * A hierarchical timer wheel, which can schedule and cancel timers in constant
+ * time. Time is measured in milliseconds of game time.
+ * 
+ * The first level has one list of timers for each of the next 256
+ * milliseconds. Each level after that has 64 lists, each covering 64 times as
+ * much time as a list on the level below. As time passes, the lists on higher
+ * levels are spread out into the levels below them, until their timers reach
+ * the first level and fire.
+ */
+class TimerWheel {
+	private static final int ROOT_BITS = 8;
+	private static final int ROOT_SIZE = 1 << ROOT_BITS;
+	private static final int ROOT_MASK = ROOT_SIZE - 1;
+	private static final int LEVEL_BITS = 6;
+	private static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+	private static final int LEVEL_MASK = LEVEL_SIZE - 1;
+	private static final int NUM_LEVELS = 4;
+	//timers further away than this wait on the top level
+	private static final long MAX_DELAY =
+			(1L << (ROOT_BITS + NUM_LEVELS * LEVEL_BITS)) - 1;
+	
+	//a doubly linked list of timers
+	static class TimerList {
+		private GameTimer head;
+		private final TimerWheel wheel;
+		
+		TimerList(TimerWheel wheel) {
+			this.wheel = wheel;
+		}
+		
+		void add(GameTimer t) {
+			t.list = this;
+			t.prev = null;
+			t.next = head;
+			if(head != null)
+				head.prev = t;
+			head = t;
+			wheel.numTimers++;
+		}
+		
+		void remove(GameTimer t) {
+			if(t.prev != null)
+				t.prev.next = t.next;
+			else
+				head = t.next;
+			if(t.next != null)
+				t.next.prev = t.prev;
+			t.prev = t.next = null;
+			t.list = null;
+			wheel.numTimers--;
+		}
+	}
+	
+	private final TimerList[] root;
+	private final TimerList[][] levels;
+	//timers that are being fired
+	private final TimerList firing;
+	private SplittableRandom random;
+	
+	//all times before this have been fired
+	private long nextTime;
+	private int numTimers;
+	
+	TimerWheel() {
+		root = new TimerList[ROOT_SIZE];
+		for(int i = 0; i < ROOT_SIZE; i++)
+			root[i] = new TimerList(this);
+		levels = new TimerList[NUM_LEVELS][LEVEL_SIZE];
+		for(int l = 0; l < NUM_LEVELS; l++) {
+			for(int i = 0; i < LEVEL_SIZE; i++)
+				levels[l][i] = new TimerList(this);
+		}
+		firing = new TimerList(this);
+		random = new SplittableRandom();
+		nextTime = 0;
+		numTimers = 0;
+	}
+	
+	/**
+	 * Set the random numbers used for the jitter of repeating timers.
+	 * @param random the random number generator
+	 */
+	void setRandom(SplittableRandom random) {
+		this.random = random;
+	}
+	
+	int numTimers() {
+		return numTimers;
+	}
+	
+	/**
+	 * Schedule a timer to fire at a certain time. If the timer was already
+	 * scheduled, it is moved.
+	 * @param t the timer to schedule
+	 * @param time the game time to fire at. Times that have already been
+	 * reached fire at the next call to advance().
+	 */
+	void schedule(GameTimer t, long time) {
+		if(t.list != null)
+			t.list.remove(t);
+		t.expires = time;
+		insert(t);
+	}
+	
+	private void insert(GameTimer t) {
+		long delay = t.expires - nextTime;
+		if(delay < 0) {
+			root[(int)(nextTime & ROOT_MASK)].add(t);
+		} else if(delay < ROOT_SIZE) {
+			root[(int)(t.expires & ROOT_MASK)].add(t);
+		} else {
+			long slotTime = delay > MAX_DELAY ? nextTime + MAX_DELAY : t.expires;
+			int shift = ROOT_BITS;
+			int level = 0;
+			while(level < NUM_LEVELS - 1
+					&& delay >= 1L << (shift + LEVEL_BITS)) {
+				shift += LEVEL_BITS;
+				level++;
+			}
+			levels[level][(int)((slotTime >> shift) & LEVEL_MASK)].add(t);
+		}
+	}
+	
+	/**
+	 * Fire every timer up to and including a certain time, in the order of
+	 * their times. Timers scheduled by the callbacks for a time that has
+	 * already passed will fire at the next millisecond that is processed.
+	 * @param time the current game time
+	 */
+	void advance(long time) {
+		while(nextTime <= time) {
+			if(numTimers == 0) {
+				//nothing to spread out or fire, so skip ahead
+				nextTime = time + 1;
+				return;
+			}
+			int index = (int)(nextTime & ROOT_MASK);
+			if(index == 0) {
+				//spread out the next list on each level whose turn it is
+				int shift = ROOT_BITS;
+				for(int l = 0; l < NUM_LEVELS; l++) {
+					int levelIndex = (int)((nextTime >> shift) & LEVEL_MASK);
+					cascade(levels[l][levelIndex]);
+					if(levelIndex != 0)
+						break;
+					shift += LEVEL_BITS;
+				}
+			}
+			nextTime++;
+			
+			TimerList list = root[index];
+			while(list.head != null) {
+				GameTimer t = list.head;
+				list.remove(t);
+				firing.add(t);
+			}
+			while(firing.head != null) {
+				GameTimer t = firing.head;
+				firing.remove(t);
+				fire(t);
+			}
+		}
+	}
+	
+	private void cascade(TimerList list) {
+		while(list.head != null) {
+			GameTimer t = list.head;
+			list.remove(t);
+			insert(t);
+		}
+	}
+	
+	private void fire(GameTimer t) {
+		t.callback.run();
+		//the callback might have cancelled or rescheduled the timer
+		if(t.interval > 0 && t.list == null) {
+			int delay = t.interval;
+			if(t.jitter > 0)
+				delay += random.nextInt(t.jitter * 2 + 1) - t.jitter;
+			schedule(t, t.expires + Math.max(delay, 1));
+		}
+	}
+	
+	/**
+	 * Cancel every timer, and start counting from a new time.
+	 * @param time the time to start at
+	 */
+	void reset(long time) {
+		for(TimerList list : root)
+			clear(list);
+		for(TimerList[] level : levels) {
+			for(TimerList list : level)
+				clear(list);
+		}
+		clear(firing);
+		nextTime = time;
+	}
+	
+	private void clear(TimerList list) {
+		while(list.head != null) {
+			GameTimer t = list.head;
+			list.remove(t);
+			t.interval = 0;
+		}
+	}
+}
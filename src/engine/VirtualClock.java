@@ -0,0 +1,37 @@
+package engine;
+
+/**
+ * A Clock that only moves when it is told to. A GameRunner using a
+ * VirtualClock runs the same steps every time, no matter how fast the
+ * computer is, which makes it useful for tests and benchmarks.
+ */
+public class VirtualClock implements Clock {
+	private volatile long time;
+	
+	public VirtualClock() {
+		time = 0;
+	}
+	
+	@Override
+	public long nanoTime() {
+		return time;
+	}
+	
+	/**
+	 * Move the clock forward.
+	 * @param nanos the time to move forward by, in nanoseconds
+	 */
+	public void advance(long nanos) {
+		if(nanos < 0)
+			throw new IllegalArgumentException("Clocks can't go backwards");
+		time += nanos;
+	}
+	
+	/**
+	 * Move the clock forward.
+	 * @param millis the time to move forward by, in milliseconds
+	 */
+	public void advanceMillis(double millis) {
+		advance(Math.round(millis * GenericGameRunner.NANOS_PER_MILLI));
+	}
+}
@@ -0,0 +1,18 @@
+package engine.graphics;
+
+import processing.core.PGraphics;
+
+/**
+ * Something that can draw itself. SpriteGroup keeps the Drawables of its
+ * sprites and effects in its snapshots, and draws them on the thread that
+ * draws, which may be while the simulation runs its next step. See
+ * Sprite.getDrawable().
+ */
+public interface Drawable {
+	/**
+	 * Draw onto the provided PGraphics.
+	 * @param g the graphics to draw on. May or may not have other things
+	 * already on it.
+	 */
+	void draw(PGraphics g);
+}
@@ -9,14 +9,26 @@ import processing.core.PGraphics;
  * @author jacobvanthoog
  *
  */
-public interface Effect extends GameObject {
+public interface Effect extends GameObject, Drawable {
 	/**
 	 * Draw the effect onto the provided PGraphics.
 	 * @param g the graphics to draw the sprite on. May or may not have other
 	 * things already on it.
 	 */
+	@Override
 	void draw(PGraphics g);
 	
+	/**
+	 * Get what SpriteGroup should draw for the effect as it is now. It follows
+	 * the same rules as Sprite.getDrawable(): the Drawable may be drawn while
+	 * the next step runs, so it must not read anything that the simulation
+	 * changes.
+	 * @return what to draw for the effect. The default is the effect itself.
+	 */
+	public default Drawable getDrawable() {
+		return this;
+	}
+	
 	/**
 	 * The z-ordering of the effect. Lower numbers are drawn first; higher
 	 * numbers are on top.
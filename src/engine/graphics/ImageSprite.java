@@ -3,15 +3,44 @@ package engine.graphics;
 import processing.core.*;
 
 /**
- * A sprite with an image.
+ * A sprite with an image. The image and its size are copied into a Picture
+ * whenever they change, which is what gets drawn, so drawing never sees a new
+ * image with an old size.
  * @author jacob
  *
  */
 public abstract class ImageSprite extends PositionableSprite {
+	//what draw() draws. Never changed, only replaced.
+	private static final class Picture implements Drawable {
+		final PImage image;
+		final float width;
+		final float height;
+		final boolean scaled;
+		
+		Picture(PImage image, float width, float height, boolean scaled) {
+			this.image = image;
+			this.width = width;
+			this.height = height;
+			this.scaled = scaled;
+		}
+		
+		@Override
+		public void draw(PGraphics g) {
+			if(image == null)
+				return;
+			g.imageMode(PGraphics.CENTER);
+			if(scaled)
+				g.image(image, 0, 0, width, height);
+			else
+				g.image(image, 0, 0);
+		}
+	}
+	
 	private PImage image;
 	private float width;
 	private float height;
 	private boolean scaled;
+	private Picture picture;
 	
 	protected ImageSprite(PImage image, float width, float height) {
 		setImage(image, width, height);
@@ -29,6 +58,7 @@ public abstract class ImageSprite extends PositionableSprite {
 		image = null;
 		width = 0;
 		height = 0;
+		updatePicture();
 	}
 	
 	protected PImage getImage() {
@@ -50,6 +80,7 @@ public abstract class ImageSprite extends PositionableSprite {
 			height = image.height;
 			scaled = false;
 		}
+		updatePicture();
 	}
 	
 	protected void setImage(PImage image, float scale) {
@@ -65,27 +96,43 @@ public abstract class ImageSprite extends PositionableSprite {
 		return height;
 	}
 	
+	//the image is drawn centered at (0, 0), so its size is the bounds
+	@Override
+	public float getBoundsWidth() {
+		return width;
+	}
+	
+	@Override
+	public float getBoundsHeight() {
+		return height;
+	}
+	
 	protected void setDimensions(float width, float height) {
 		this.width = width;
 		this.height = height;
 		if(width != image.width || height != image.height)
 			scaled = true;
+		updatePicture();
 	}
 	
 	protected void setScale(float scale) {
 		width = image.width * scale;
 		height = image.height * scale;
 		scaled = scale != 1;
+		updatePicture();
 	}
-
+	
+	private void updatePicture() {
+		picture = new Picture(image, width, height, scaled);
+	}
+	
+	@Override
+	public Drawable getDrawable() {
+		return picture;
+	}
+	
 	@Override
 	public void draw(PGraphics g) {
-		if(image == null)
-			return;
-		g.imageMode(PGraphics.CENTER);
-		if(scaled)
-			g.image(image, 0, 0, width, height);
-		else
-			g.image(image, 0, 0);
+		picture.draw(g);
 	}
 }
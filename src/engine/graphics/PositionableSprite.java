@@ -2,7 +2,7 @@ package engine.graphics;
 
 import java.util.Collection;
 
-import engine.GameObject;
+import engine.*;
 
 /**
  * A sprite with implementations for many of the values in the Sprite interface.
@@ -12,14 +12,17 @@ import engine.GameObject;
  * @author jacob
  *
  */
-public abstract class PositionableSprite implements Sprite {
+public abstract class PositionableSprite implements Sprite, Poolable {
 	/*
 	 * 'c' stands for current
 	 * For example, 'xScale' is the most up to date x-scale of the sprite, but
 	 * 'cXScale' is what the sprite is going to return when asked.
 	 * During the update step, the updated values are shifted into the 'current'
 	 * values.
+	 * 'p' stands for previous: the current values from before the last update,
+	 * used to draw between updates when the game has a fixed timestep.
 	 */
+	protected float pX, pY, pRotation, pXScale, pYScale;
 	protected float cX, x, cY, y;
 	protected float cRotation, rotation;
 	protected float cXScale, xScale, cYScale, yScale;
@@ -29,8 +32,30 @@ public abstract class PositionableSprite implements Sprite {
 	protected boolean cShown, shown;
 	protected int cLayer, layer;
 	private boolean cReadyToDelete, readyToDelete;
+	private boolean updated;
+	private final DeleteNotifier deleteNotifier;
+	//set while the sprite is in a SpatialHash, which it moves itself in
+	SpatialHash.Node hashNode;
 	
 	protected PositionableSprite() {
+		deleteNotifier = new DeleteNotifier(this);
+		setDefaults();
+		shiftNextValuesToCurrent();
+	}
+	
+	/**
+	 * Set every value back to what the constructor gave it, and forget the
+	 * delete listeners. Subclasses that set values in their constructors
+	 * should override this to set them again.
+	 */
+	@Override
+	public void reset() {
+		setDefaults();
+		deleteNotifier.reset();
+		shiftNextValuesToCurrent();
+	}
+	
+	private void setDefaults() {
 		x = y = 0;
 		rotation = 0;
 		xScale = yScale = 1;
@@ -40,10 +65,25 @@ public abstract class PositionableSprite implements Sprite {
 		shown = true;
 		layer = 0;
 		readyToDelete = false;
-		shiftNextValuesToCurrent();
+		updated = false;
 	}
 	
 	private void shiftNextValuesToCurrent() {
+		if(updated) {
+			pX = cX;
+			pY = cY;
+			pRotation = cRotation;
+			pXScale = cXScale;
+			pYScale = cYScale;
+		} else {
+			//values set before the first update (like a starting position)
+			//shouldn't be blended with the constructor's defaults
+			pX = x;
+			pY = y;
+			pRotation = rotation;
+			pXScale = xScale;
+			pYScale = yScale;
+		}
 		cX = x;
 		cY = y;
 		cRotation = rotation;
@@ -56,11 +96,16 @@ public abstract class PositionableSprite implements Sprite {
 		cShown = shown;
 		cLayer = layer;
 		cReadyToDelete = readyToDelete;
+		if(cReadyToDelete)
+			deleteNotifier.notifyDeleted();
 	}
 	
 	@Override
 	public Collection<GameObject> update() {
 		shiftNextValuesToCurrent();
+		updated = true;
+		if(hashNode != null)
+			hashNode.hash.move(hashNode);
 		return null;
 	}
 	
@@ -72,6 +117,17 @@ public abstract class PositionableSprite implements Sprite {
 	public boolean readyToDelete() {
 		return cReadyToDelete;
 	}
+	
+	@Override
+	public boolean addDeleteListener(DeleteListener l) {
+		deleteNotifier.add(l);
+		return true;
+	}
+	
+	@Override
+	public void removeDeleteListener(DeleteListener l) {
+		deleteNotifier.remove(l);
+	}
 
 	@Override
 	public boolean isShown() {
@@ -108,6 +164,31 @@ public abstract class PositionableSprite implements Sprite {
 		return cYScale;
 	}
 
+	@Override
+	public float getX(float t) {
+		return pX + (cX - pX) * t;
+	}
+
+	@Override
+	public float getY(float t) {
+		return pY + (cY - pY) * t;
+	}
+
+	@Override
+	public float getRotation(float t) {
+		return pRotation + (cRotation - pRotation) * t;
+	}
+
+	@Override
+	public float getXScale(float t) {
+		return pXScale + (cXScale - pXScale) * t;
+	}
+
+	@Override
+	public float getYScale(float t) {
+		return pYScale + (cYScale - pYScale) * t;
+	}
+
 	@Override
 	public float getXVelocity() {
 		return cXVelocity;
@@ -0,0 +1,140 @@
+package engine.graphics;
+
+import java.util.Arrays;
+
+/**
+ * The effects of a SpriteGroup in the order they are drawn, along with the
+ * previous and current transforms of each sprite, as they were at the end of a
+ * simulation loop. Once published, a snapshot isn't changed until the drawing
+ * thread is done with it, so drawing doesn't see sprites halfway through an
+ * update. Each effect and sprite is kept as the Drawable it gave when the
+ * snapshot was taken, so nothing in the snapshot refers to the live objects.
+ * 
+ * The contents of groups inside the group are in the same snapshot, between a
+ * GROUP_BEGIN entry, which has the inner group's transforms, and a GROUP_END
+ * entry.
+ */
+final class RenderSnapshot {
+	//kinds of entries
+	static final byte EFFECT = 0, SPRITE = 1, GROUP_BEGIN = 2, GROUP_END = 3;
+	
+	//values stored for each sprite in transforms
+	static final int X = 0, Y = 1, ROTATION = 2, X_SCALE = 3, Y_SCALE = 4;
+	static final int PREVIOUS = 0, CURRENT = 5;
+	static final int DEPTH = 10, ALPHA = 11;
+	static final int BOUNDS_WIDTH = 12, BOUNDS_HEIGHT = 13;
+	static final int STRIDE = 14;
+	
+	byte[] kinds;
+	//null for GROUP_BEGIN and GROUP_END entries
+	Drawable[] drawables;
+	//only set for SPRITE and GROUP_BEGIN entries
+	float[] transforms;
+	int size;
+	
+	//counts the snapshots the group has published, starting at 1
+	long generation;
+	//the runner's interpolation when the snapshot was taken
+	float interpolation;
+	//the runner's clock time when the snapshot was taken
+	long clockTime;
+	//the real time of one fixed step, or 0 without a fixed timestep
+	double realTickLength;
+	
+	RenderSnapshot() {
+		kinds = new byte[16];
+		drawables = new Drawable[16];
+		transforms = new float[16 * STRIDE];
+		size = 0;
+		interpolation = 1;
+	}
+	
+	void clear() {
+		Arrays.fill(drawables, 0, size, null);
+		size = 0;
+	}
+	
+	void addEffect(Effect e) {
+		add(EFFECT, e.getDrawable());
+	}
+	
+	void addSprite(Sprite s) {
+		addTransforms(s);
+		add(SPRITE, s.getDrawable());
+	}
+	
+	/**
+	 * Start the contents of a group inside the group that takes the snapshot.
+	 * Everything added until endGroup() is drawn with the group's transform.
+	 * @param group the inner group
+	 */
+	void beginGroup(Sprite group) {
+		addTransforms(group);
+		add(GROUP_BEGIN, null);
+	}
+	
+	void endGroup() {
+		add(GROUP_END, null);
+	}
+	
+	private void add(byte kind, Drawable drawable) {
+		ensureCapacity();
+		kinds[size] = kind;
+		drawables[size] = drawable;
+		size++;
+	}
+	
+	//fill in the transforms of the next entry
+	private void addTransforms(Sprite s) {
+		ensureCapacity();
+		int i = size * STRIDE;
+		transforms[i + PREVIOUS + X] = s.getX(0);
+		transforms[i + PREVIOUS + Y] = s.getY(0);
+		transforms[i + PREVIOUS + ROTATION] = s.getRotation(0);
+		transforms[i + PREVIOUS + X_SCALE] = s.getXScale(0);
+		transforms[i + PREVIOUS + Y_SCALE] = s.getYScale(0);
+		transforms[i + CURRENT + X] = s.getX(1);
+		transforms[i + CURRENT + Y] = s.getY(1);
+		transforms[i + CURRENT + ROTATION] = s.getRotation(1);
+		transforms[i + CURRENT + X_SCALE] = s.getXScale(1);
+		transforms[i + CURRENT + Y_SCALE] = s.getYScale(1);
+		transforms[i + DEPTH] = s.getDepth();
+		transforms[i + ALPHA] = s.getAlpha();
+		transforms[i + BOUNDS_WIDTH] = s.getBoundsWidth();
+		transforms[i + BOUNDS_HEIGHT] = s.getBoundsHeight();
+	}
+	
+	/**
+	 * Blend a value of a sprite between its previous and current values.
+	 * @param index the index of the sprite
+	 * @param value X, Y, ROTATION, X_SCALE or Y_SCALE
+	 * @param t the blend amount, from 0 (previous) to 1 (current)
+	 */
+	float blend(int index, int value, float t) {
+		int i = index * STRIDE + value;
+		float previous = transforms[i + PREVIOUS];
+		return previous + (transforms[i + CURRENT] - previous) * t;
+	}
+	
+	/**
+	 * Get the blend amount to draw with at a certain time. Between steps, this
+	 * keeps moving forward from the interpolation the snapshot was taken with,
+	 * but never past the current values.
+	 * @param now the clock time to draw at
+	 */
+	float blendAmount(long now) {
+		if(realTickLength <= 0)
+			return interpolation;
+		double t = interpolation + (now - clockTime) / realTickLength;
+		return (float)Math.max(0, Math.min(t, 1));
+	}
+	
+	private void ensureCapacity() {
+		if(size < kinds.length)
+			return;
+		int capacity = kinds.length * 2;
+		kinds = Arrays.copyOf(kinds, capacity);
+		drawables = Arrays.copyOf(drawables, capacity);
+		transforms = Arrays.copyOf(transforms, capacity * STRIDE);
+	}
+}
@@ -0,0 +1,429 @@
+package engine.graphics;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Finds the sprites near a point without checking every sprite. Space is split
+ * into a uniform grid of square cells, and the cells are hashed into a fixed
+ * number of buckets, so the grid has no edges and doesn't grow as sprites move
+ * farther away.
+ *
+ * PositionableSprites move themselves to their new cell in their update step.
+ * Other sprites are moved when refresh() is called. A SpriteGroup with a
+ * spatial hash keeps the sprites it contains in it, and refreshes it in its
+ * own update step.
+ *
+ * Queries don't allocate, and only read the hash, so they can be made from
+ * think(), even in a parallel think step. Sprites are only added, removed and
+ * moved on the simulation thread, in the update step.
+ */
+public class SpatialHash {
+	private static final int DEFAULT_BUCKETS = 1024;
+	
+	//the hash's record of a sprite
+	static final class Node {
+		SpatialHash hash;
+		Sprite sprite;
+		//the position the sprite was filed at
+		float x, y;
+		int cellX, cellY;
+		int bucket;
+		//position in the bucket
+		int index;
+		//position in polledNodes, if the sprite can't move itself
+		int pollIndex;
+	}
+	
+	private final float cellSize;
+	private final int bucketMask;
+	private final Node[][] buckets;
+	private final int[] bucketSizes;
+	private final IdentityHashMap<Sprite, Node> nodes;
+	
+	//nodes of sprites that aren't PositionableSprites, moved by refresh()
+	private Node[] polledNodes;
+	private int numPolledNodes;
+	
+	private Node[] freeNodes;
+	private int numFreeNodes;
+	
+	/**
+	 * Create a spatial hash with the default number of buckets.
+	 * @param cellSize the width and height of each cell. Queries are fastest
+	 * when this is about the size of the area usually searched.
+	 */
+	public SpatialHash(float cellSize) {
+		this(cellSize, DEFAULT_BUCKETS);
+	}
+	
+	/**
+	 * Create a spatial hash.
+	 * @param cellSize the width and height of each cell
+	 * @param numBuckets the number of buckets cells are hashed into. This is
+	 * rounded up to a power of 2.
+	 */
+	public SpatialHash(float cellSize, int numBuckets) {
+		if(cellSize <= 0)
+			throw new IllegalArgumentException("cellSize must be positive");
+		this.cellSize = cellSize;
+		int size = Integer.highestOneBit(Math.max(numBuckets, 1) - 1) << 1;
+		size = Math.max(size, 1);
+		bucketMask = size - 1;
+		buckets = new Node[size][];
+		bucketSizes = new int[size];
+		nodes = new IdentityHashMap<>();
+		polledNodes = new Node[16];
+		numPolledNodes = 0;
+		freeNodes = new Node[16];
+		numFreeNodes = 0;
+	}
+	
+	public float getCellSize() {
+		return cellSize;
+	}
+	
+	public int size() {
+		return nodes.size();
+	}
+	
+	public boolean contains(Sprite s) {
+		return nodes.containsKey(s);
+	}
+	
+	/**
+	 * Add a sprite at its current position. Nothing happens if it is already
+	 * in the hash.
+	 * @param s the sprite to add
+	 */
+	public void add(Sprite s) {
+		if(s == null || nodes.containsKey(s))
+			return;
+		Node node = newNode(s);
+		nodes.put(s, node);
+		node.x = s.getX();
+		node.y = s.getY();
+		node.cellX = cellFor(node.x);
+		node.cellY = cellFor(node.y);
+		addToBucket(node, bucketFor(node.cellX, node.cellY));
+		
+		//a PositionableSprite can only move itself in one hash
+		if(s instanceof PositionableSprite
+				&& ((PositionableSprite)s).hashNode == null) {
+			((PositionableSprite)s).hashNode = node;
+		} else {
+			if(numPolledNodes == polledNodes.length)
+				polledNodes = Arrays.copyOf(polledNodes, numPolledNodes * 2);
+			node.pollIndex = numPolledNodes;
+			polledNodes[numPolledNodes++] = node;
+		}
+	}
+	
+	/**
+	 * Remove a sprite. Nothing happens if it isn't in the hash.
+	 * @param s the sprite to remove
+	 */
+	public void remove(Sprite s) {
+		if(s == null)
+			return;
+		Node node = nodes.remove(s);
+		if(node == null)
+			return;
+		removeFromBucket(node);
+		if(node.pollIndex >= 0) {
+			Node last = polledNodes[--numPolledNodes];
+			polledNodes[node.pollIndex] = last;
+			last.pollIndex = node.pollIndex;
+			polledNodes[numPolledNodes] = null;
+		} else {
+			((PositionableSprite)s).hashNode = null;
+		}
+		freeNode(node);
+	}
+	
+	/**
+	 * Remove every sprite.
+	 */
+	public void clear() {
+		for(Node node : nodes.values()) {
+			if(node.pollIndex < 0)
+				((PositionableSprite)node.sprite).hashNode = null;
+			freeNode(node);
+		}
+		nodes.clear();
+		for(int b = 0; b < buckets.length; b++) {
+			if(buckets[b] != null)
+				Arrays.fill(buckets[b], 0, bucketSizes[b], null);
+			bucketSizes[b] = 0;
+		}
+		Arrays.fill(polledNodes, 0, numPolledNodes, null);
+		numPolledNodes = 0;
+	}
+	
+	/**
+	 * Move the sprites that can't move themselves to their current positions.
+	 * PositionableSprites are moved in their own update step.
+	 */
+	public void refresh() {
+		for(int i = 0; i < numPolledNodes; i++)
+			move(polledNodes[i]);
+	}
+	
+	/**
+	 * Move a sprite to its current position.
+	 * @param s the sprite that moved
+	 */
+	public void update(Sprite s) {
+		Node node = nodes.get(s);
+		if(node != null)
+			move(node);
+	}
+	
+	void move(Node node) {
+		node.x = node.sprite.getX();
+		node.y = node.sprite.getY();
+		int cellX = cellFor(node.x);
+		int cellY = cellFor(node.y);
+		if(cellX == node.cellX && cellY == node.cellY)
+			return;
+		node.cellX = cellX;
+		node.cellY = cellY;
+		int bucket = bucketFor(cellX, cellY);
+		if(bucket == node.bucket)
+			return;
+		removeFromBucket(node);
+		addToBucket(node, bucket);
+	}
+	
+	/**
+	 * Find the sprites whose positions are within a rectangle.
+	 * @param left the left edge of the rectangle
+	 * @param top the top edge of the rectangle
+	 * @param right the right edge of the rectangle
+	 * @param bottom the bottom edge of the rectangle
+	 * @param results filled with the sprites that were found, as many as fit
+	 * @return the number of sprites found, which may be more than the length
+	 * of results
+	 */
+	public int query(float left, float top, float right, float bottom,
+			Sprite[] results) {
+		return query(left, top, right, bottom, Float.NaN, Float.NaN, -1,
+				results);
+	}
+	
+	/**
+	 * Find the sprites whose positions are within a distance of a point.
+	 * @param x the x position of the point
+	 * @param y the y position of the point
+	 * @param radius the distance to search
+	 * @param results filled with the sprites that were found, as many as fit
+	 * @return the number of sprites found, which may be more than the length
+	 * of results
+	 */
+	public int queryRadius(float x, float y, float radius, Sprite[] results) {
+		return query(x - radius, y - radius, x + radius, y + radius, x, y,
+				radius * radius, results);
+	}
+	
+	//find the sprites in a rectangle, and also within a distance of (x, y) if
+	//distanceSquared isn't negative
+	private int query(float left, float top, float right, float bottom,
+			float x, float y, float distanceSquared, Sprite[] results) {
+		int found = 0;
+		int minCellX = cellFor(left), maxCellX = cellFor(right);
+		int minCellY = cellFor(top), maxCellY = cellFor(bottom);
+		long numCells = ((long)maxCellX - minCellX + 1)
+				* ((long)maxCellY - minCellY + 1);
+		if(numCells > buckets.length) {
+			//a large area covers most buckets, so check every sprite once
+			for(int b = 0; b < buckets.length; b++) {
+				Node[] bucket = buckets[b];
+				for(int i = 0; i < bucketSizes[b]; i++) {
+					if(matches(bucket[i], left, top, right, bottom,
+							x, y, distanceSquared))
+						found = addResult(bucket[i].sprite, results, found);
+				}
+			}
+			return found;
+		}
+		for(int cellY = minCellY; cellY <= maxCellY; cellY++) {
+			for(int cellX = minCellX; cellX <= maxCellX; cellX++) {
+				int b = bucketFor(cellX, cellY);
+				Node[] bucket = buckets[b];
+				for(int i = 0; i < bucketSizes[b]; i++) {
+					Node node = bucket[i];
+					//other cells can share the bucket. Only finding a sprite
+					//in its own cell finds it once.
+					if(node.cellX != cellX || node.cellY != cellY)
+						continue;
+					if(matches(node, left, top, right, bottom,
+							x, y, distanceSquared))
+						found = addResult(node.sprite, results, found);
+				}
+			}
+		}
+		return found;
+	}
+	
+	private static boolean matches(Node node, float left, float top,
+			float right, float bottom, float x, float y,
+			float distanceSquared) {
+		if(node.x < left || node.x > right || node.y < top || node.y > bottom)
+			return false;
+		if(distanceSquared < 0)
+			return true;
+		float dx = node.x - x;
+		float dy = node.y - y;
+		return dx * dx + dy * dy <= distanceSquared;
+	}
+	
+	private static int addResult(Sprite s, Sprite[] results, int found) {
+		if(found < results.length)
+			results[found] = s;
+		return found + 1;
+	}
+	
+	/**
+	 * Find the sprite closest to a point. Cells are searched outward from the
+	 * point, so the search is faster the closer the sprite is.
+	 * @param x the x position of the point
+	 * @param y the y position of the point
+	 * @param maxDistance the farthest to search
+	 * @param ignore a sprite that can't be the result, such as the one
+	 * searching, or null
+	 * @return the closest sprite, or null if none are within maxDistance
+	 */
+	public Sprite nearest(float x, float y, float maxDistance, Sprite ignore) {
+		Node nearest = null;
+		float nearestSquared = maxDistance * maxDistance;
+		int centerX = cellFor(x);
+		int centerY = cellFor(y);
+		int maxRing = (int)Math.ceil(maxDistance / cellSize);
+		for(int ring = 0; ring <= maxRing; ring++) {
+			//everything in this ring is at least this far away
+			float ringDistance = (ring - 1) * cellSize;
+			if(ring > 1 && ringDistance * ringDistance > nearestSquared)
+				break;
+			long ringWidth = 2L * ring + 1;
+			if(ringWidth * ringWidth > buckets.length)
+				return nearestInAll(x, y, ignore, nearest, nearestSquared);
+			int minX = centerX - ring, maxX = centerX + ring;
+			int minY = centerY - ring, maxY = centerY + ring;
+			for(int cellY = minY; cellY <= maxY; cellY++) {
+				//between the top and bottom rows, only the left and right
+				//cells are in the ring
+				int step = cellY == minY || cellY == maxY ? 1 : maxX - minX;
+				for(int cellX = minX; cellX <= maxX; cellX += step) {
+					Node node = nearestInCell(cellX, cellY, x, y, ignore,
+							nearestSquared);
+					if(node != null) {
+						nearest = node;
+						nearestSquared = squared(node, x, y);
+					}
+				}
+			}
+		}
+		return nearest == null ? null : nearest.sprite;
+	}
+	
+	//the closest node in a cell that is no farther than a squared distance,
+	//or null
+	private Node nearestInCell(int cellX, int cellY, float x, float y,
+			Sprite ignore, float nearestSquared) {
+		int b = bucketFor(cellX, cellY);
+		Node[] bucket = buckets[b];
+		Node nearest = null;
+		for(int i = 0; i < bucketSizes[b]; i++) {
+			Node node = bucket[i];
+			if(node.cellX != cellX || node.cellY != cellY
+					|| node.sprite == ignore)
+				continue;
+			float d = squared(node, x, y);
+			if(d <= nearestSquared) {
+				nearest = node;
+				nearestSquared = d;
+			}
+		}
+		return nearest;
+	}
+	
+	//search every sprite, once the search area covers more cells than there
+	//are buckets
+	private Sprite nearestInAll(float x, float y, Sprite ignore, Node nearest,
+			float nearestSquared) {
+		for(int b = 0; b < buckets.length; b++) {
+			Node[] bucket = buckets[b];
+			for(int i = 0; i < bucketSizes[b]; i++) {
+				Node node = bucket[i];
+				if(node.sprite == ignore)
+					continue;
+				float d = squared(node, x, y);
+				if(d <= nearestSquared) {
+					nearest = node;
+					nearestSquared = d;
+				}
+			}
+		}
+		return nearest == null ? null : nearest.sprite;
+	}
+	
+	private static float squared(Node node, float x, float y) {
+		float dx = node.x - x;
+		float dy = node.y - y;
+		return dx * dx + dy * dy;
+	}
+	
+	private int cellFor(float position) {
+		return (int)Math.floor(position / cellSize);
+	}
+	
+	private int bucketFor(int cellX, int cellY) {
+		int h = cellX * 73856093 ^ cellY * 19349663;
+		return (h ^ (h >>> 16)) & bucketMask;
+	}
+	
+	private void addToBucket(Node node, int b) {
+		Node[] bucket = buckets[b];
+		if(bucket == null) {
+			bucket = new Node[4];
+			buckets[b] = bucket;
+		} else if(bucketSizes[b] == bucket.length) {
+			bucket = Arrays.copyOf(bucket, bucket.length * 2);
+			buckets[b] = bucket;
+		}
+		node.bucket = b;
+		node.index = bucketSizes[b];
+		bucket[bucketSizes[b]++] = node;
+	}
+	
+	private void removeFromBucket(Node node) {
+		Node[] bucket = buckets[node.bucket];
+		int last = --bucketSizes[node.bucket];
+		bucket[node.index] = bucket[last];
+		bucket[node.index].index = node.index;
+		bucket[last] = null;
+		node.index = -1;
+	}
+	
+	private Node newNode(Sprite s) {
+		Node node;
+		if(numFreeNodes != 0) {
+			node = freeNodes[--numFreeNodes];
+			freeNodes[numFreeNodes] = null;
+		} else {
+			node = new Node();
+			node.hash = this;
+		}
+		node.sprite = s;
+		node.index = -1;
+		node.pollIndex = -1;
+		return node;
+	}
+	
+	private void freeNode(Node node) {
+		node.sprite = null;
+		if(numFreeNodes == freeNodes.length)
+			freeNodes = Arrays.copyOf(freeNodes, numFreeNodes * 2);
+		freeNodes[numFreeNodes++] = node;
+	}
+}
@@ -8,7 +8,7 @@ import processing.core.PGraphics;
  * @author jacob
  *
  */
-public interface Sprite extends engine.GameObject {
+public interface Sprite extends engine.GameObject, Drawable {
 	
 	/**
 	 * Draw the sprite onto the provided PGraphics. The sprite should be
@@ -17,8 +17,26 @@ public interface Sprite extends engine.GameObject {
 	 * @param g the graphics to draw the sprite on. May or may not have other
 	 * things already on it.
 	 */
+	@Override
 	void draw(PGraphics g);
 	
+	/**
+	 * Get what SpriteGroup should draw for the sprite as it is now. The group
+	 * calls this on the simulation thread when it takes a snapshot, and the
+	 * Drawable is drawn later, on the thread that draws, which may be while
+	 * the next step runs. So its draw() must not read anything that the
+	 * simulation changes. A sprite whose contents change (its image, text,
+	 * etc.) should return an object that doesn't change, with a copy of them,
+	 * and make a new one when they change.
+	 * 
+	 * The default returns the sprite itself, which is only safe if draw()
+	 * reads nothing that changes after the sprite is started.
+	 * @return what to draw for the sprite
+	 */
+	public default Drawable getDrawable() {
+		return this;
+	}
+	
 	
 	public boolean isShown();
 	
@@ -39,6 +57,44 @@ public interface Sprite extends engine.GameObject {
 	public float getXScale();
 	public float getYScale();
 	
+	/**
+	 * Get the x position blended between the previous and the current update,
+	 * for drawing with a fixed timestep. Sprites that don't keep their
+	 * previous values can ignore the blend amount.
+	 * @param t the blend amount, from 0 (previous) to 1 (current). See
+	 * GameRunner.getInterpolation().
+	 * @return the blended x position
+	 */
+	public default float getX(float t) {
+		return getX();
+	}
+	public default float getY(float t) {
+		return getY();
+	}
+	public default float getRotation(float t) {
+		return getRotation();
+	}
+	public default float getXScale(float t) {
+		return getXScale();
+	}
+	public default float getYScale(float t) {
+		return getYScale();
+	}
+	
+	/**
+	 * The width of a box around everything draw() draws, centered at (0, 0),
+	 * before rotation and scaling. SpriteGroup uses the bounds to skip
+	 * sprites that are entirely off the visible area.
+	 * @return the width of the bounds, or a negative number if the sprite
+	 * doesn't know its bounds and should always be drawn
+	 */
+	public default float getBoundsWidth() {
+		return -1;
+	}
+	public default float getBoundsHeight() {
+		return -1;
+	}
+	
 	/**
 	 * The x velocity of the sprite. This is only useful for other sprites, for
 	 * physics. It is up to this sprite to update its position based on its
@@ -1,6 +1,7 @@
 package engine.graphics;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import engine.*;
 import processing.core.PGraphics;
 
@@ -8,178 +9,814 @@ import processing.core.PGraphics;
  * A SpriteGroup contains multiple sprites or effects combined on a single layer
  * that can be manipulated like any other sprite.
  * 
+ * Effects are drawn from a snapshot taken by publishSnapshot(), which can be
+ * called on a different thread than drawSnapshot(). The snapshot keeps the
+ * order of the effects, the transforms of the sprites, and what each one gave
+ * from getDrawable(). Those Drawables may be drawn at the same time as the next
+ * step of the simulation, so they must not read anything the simulation
+ * changes; see Sprite.getDrawable().
+ * 
+ * A group inside this group is part of this group's snapshot. Its contents are
+ * taken along with this group's, so it never takes a snapshot of its own, and
+ * its draw() isn't called.
+ * 
+ * Effects and sprites are only drawn while the GameRunner has them started.
+ * The group watches each one with the runner's watchObject(), so it hears when
+ * the object is started or removed instead of asking about it. Objects that
+ * are removed from the runner without being deleted should be removed from
+ * the group as well.
+ * 
+ * If the group is given a view with setView(), sprites whose bounds are
+ * entirely outside of it aren't drawn. Sprites that don't know their bounds
+ * are always drawn. Sprites in groups inside this one are checked against the
+ * view as seen from inside the group, which is the box around the view after
+ * undoing the group's transform.
+ * 
+ * A group can also keep its sprites in a SpatialHash, given with
+ * setSpatialHash(), to find the sprites near a point.
+ * 
  * Note: SpriteGroup implementations should not have any alpha value other than
  * 1.
  * @author jacob
  *
  */
 public abstract class SpriteGroup extends PositionableSprite {
-	private List<Effect> effects;
-	
-	private Set<Effect> effectsToAdd;
-	private Set<Effect> effectsToRemove;
-	
-	private Map<Sprite, Effect> spriteEffects;
-	
-	private final GameRunner runner;
-	
-	private class SpriteEffect implements Effect {
-		Sprite s;
+	//the group's record of an effect or sprite it has been given
+	private static class Entry implements ObjectWatcher {
+		static final int PENDING_ADD = 0;
+		static final int ADDED = 1;
+		static final int PENDING_REMOVE = 2;
+		static final int REMOVED = 3;
+		
+		GameObject object;
+		//one of these is the object, depending on how it was added
+		Effect effect;
+		Sprite sprite;
+		int state;
+		//position in its layer, if added
+		Layer layer;
+		int index;
+		//when the entry was added, to keep each layer in the order added
+		long sequence;
+		//position in polledEntries, if readyToDelete() has to be checked
+		int pollIndex;
+		//whether the runner has started the object, so it can be drawn. Set
+		//by the runner, which is watched while the entry is ADDED.
+		boolean attached;
 		
-		SpriteEffect(Sprite sprite) {
-			s = sprite;
+		int getLayer() {
+			return sprite != null ? sprite.getLayer() : effect.getLayer();
 		}
 		
 		@Override
-		public void start(int time) { }
+		public void objectStarted(GameObject o) {
+			attached = true;
+		}
 		
 		@Override
-		public void think(int currentTime, int elapsedTime) { }
+		public void objectRemoved(GameObject o) {
+			attached = false;
+		}
+	}
+	
+	//the entries on one layer, in the order they were added. When an entry
+	//is removed, its place is left empty until compact() closes the gaps, so
+	//the entries after it keep their order.
+	private static class Layer {
+		final int layer;
+		Entry[] entries;
+		int size;
+		//removed places that haven't been closed yet
+		int numGaps;
 		
-		@Override
-		public Collection<GameObject> update() { return null; }
+		Layer(int layer) {
+			this.layer = layer;
+			entries = new Entry[16];
+			size = 0;
+			numGaps = 0;
+		}
 		
-		@Override
-		public boolean readyToDelete() {
-			return s.readyToDelete();
+		//add the entry after every entry that was added before it. New
+		//entries go at the end; moved ones are put back in their place.
+		void add(Entry entry) {
+			compact();
+			if(size == entries.length)
+				entries = Arrays.copyOf(entries, size * 2);
+			int index = size;
+			while(index > 0 && entries[index - 1].sequence > entry.sequence) {
+				entries[index] = entries[index - 1];
+				entries[index].index = index;
+				index--;
+			}
+			entry.layer = this;
+			entry.index = index;
+			entries[index] = entry;
+			size++;
 		}
 		
-		@Override
-		public void draw(PGraphics g) {
-			if(!s.isShown())
-				return;
-			if(s.getAlpha() <= 0)
-				return;
-			g.pushMatrix();
-			float depth = s.getDepth();
-			g.translate(s.getX() / depth, s.getY() / depth);
-			g.rotate(s.getRotation());
-			g.scale(s.getXScale(), s.getYScale());
-			//TODO: alpha isn't working
-			g.tint(255, s.getAlpha() * 255);
-			s.draw(g);
-			g.tint(255, 255);
-			g.popMatrix();
+		void remove(Entry entry) {
+			entries[entry.index] = null;
+			numGaps++;
+			entry.layer = null;
+			entry.index = -1;
 		}
 		
-		@Override
-		public int getLayer() {
-			return s.getLayer();
+		//move the entries down over the removed places
+		void compact() {
+			if(numGaps == 0)
+				return;
+			int kept = 0;
+			for(int i = 0; i < size; i++) {
+				Entry entry = entries[i];
+				if(entry == null)
+					continue;
+				entry.index = kept;
+				entries[kept++] = entry;
+			}
+			Arrays.fill(entries, kept, size, null);
+			size = kept;
+			numGaps = 0;
 		}
 		
+		void clear() {
+			for(int i = 0; i < size; i++) {
+				if(entries[i] != null)
+					entries[i].layer = null;
+				entries[i] = null;
+			}
+			size = 0;
+			numGaps = 0;
+		}
 	}
 	
+	//all entries that are not REMOVED
+	private final Map<GameObject, Entry> entries;
+	//entries that aren't in use, to give to the next added objects
+	private Entry[] freeEntries;
+	private int numFreeEntries;
+	private int numEffects;
+	
+	//numbers the entries in the order they are added
+	private long nextSequence;
+	//every layer that has had an effect, from the lowest layer to the highest.
+	//Entries are only moved when their layer changes, so nothing is sorted
+	//while drawing.
+	private Layer[] layers;
+	private int numLayers;
+	//entries whose layer changed, waiting to be moved
+	private Entry[] movedEntries;
+	private int numMovedEntries;
+	
+	private Entry[] entriesToAdd;
+	private int numEntriesToAdd;
+	private Entry[] entriesToRemove;
+	private int numEntriesToRemove;
+	
+	//entries that can't notify deleteListener, so have to be checked
+	private Entry[] polledEntries;
+	private int numPolledEntries;
+	//objects that notified deleteListener, to remove in the next think step
+	private GameObject[] deletedObjects;
+	private int numDeletedObjects;
+	private final DeleteListener deleteListener = new DeleteListener() {
+		@Override
+		public void readyToDelete(GameObject o) {
+			if(numDeletedObjects == deletedObjects.length)
+				deletedObjects = Arrays.copyOf(deletedObjects,
+						numDeletedObjects * 2);
+			deletedObjects[numDeletedObjects++] = o;
+		}
+	};
+	
+	private final GameRunner runner;
+	
+	//triple buffered snapshots. The simulation fills the back snapshot, then
+	//swaps it with the published one; drawing swaps the published one with the
+	//front snapshot when there is a new one.
+	private static final int SNAPSHOT_INDEX = 3;
+	private static final int SNAPSHOT_FRESH = 4;
+	private final RenderSnapshot[] snapshots;
+	private final AtomicInteger publishedSnapshot;
+	private int backSnapshot;
+	private int frontSnapshot;
+	//the generation of the last snapshot published, and of the last one
+	//drawn. Every snapshot older than the drawn one is done with.
+	private long publishedGeneration;
+	private volatile long drawnGeneration;
+	
+	//the visible area, for skipping sprites that are outside of it
+	private boolean culling;
+	private float viewLeft, viewTop, viewRight, viewBottom;
+	//the view in the coordinates of each level of inner group that
+	//drawSnapshot() is in: left, top, right and bottom for each level
+	private float[] views;
+	//the sprites in the group, by position, if the group has one
+	private SpatialHash spatialHash;
+	
+	//counted by drawSnapshot(), on the thread that draws
+	private int numDrawn;
+	private int numCulled;
+	
 	public SpriteGroup(GameRunner run) {
 		super();
 		runner = run;
-		effects = new ArrayList<>();
-		effectsToAdd = new HashSet<>();
-		effectsToRemove = new HashSet<>();
-		spriteEffects = new HashMap<>();
+		entries = new IdentityHashMap<>();
+		freeEntries = new Entry[16];
+		numFreeEntries = 0;
+		numEffects = 0;
+		layers = new Layer[8];
+		numLayers = 0;
+		movedEntries = new Entry[8];
+		numMovedEntries = 0;
+		nextSequence = 0;
+		entriesToAdd = new Entry[16];
+		numEntriesToAdd = 0;
+		entriesToRemove = new Entry[16];
+		numEntriesToRemove = 0;
+		polledEntries = new Entry[16];
+		numPolledEntries = 0;
+		deletedObjects = new GameObject[16];
+		numDeletedObjects = 0;
+		snapshots = new RenderSnapshot[] {
+				new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot()
+		};
+		backSnapshot = 0;
+		publishedSnapshot = new AtomicInteger(1);
+		frontSnapshot = 2;
+		publishedGeneration = 0;
+		drawnGeneration = 0;
+		culling = false;
+		views = new float[4 * 4];
+		numDrawn = 0;
+		numCulled = 0;
 	}
 	
 	@Override
 	public void think(int current, int elapsed) {
-		for(Effect e : effects) {
-			if(e.readyToDelete())
-				removeEffect(e);
+		for(int i = 0; i < numDeletedObjects; i++) {
+			remove(deletedObjects[i]);
+			deletedObjects[i] = null;
+		}
+		numDeletedObjects = 0;
+		for(int i = 0; i < numPolledEntries; i++) {
+			GameObject o = polledEntries[i].object;
+			if(o.readyToDelete())
+				remove(o);
 		}
-		for(Effect e : effectsToAdd) {
-			if(e.readyToDelete())
-				removeEffect(e);
+		for(int i = 0; i < numEntriesToAdd; i++) {
+			Entry entry = entriesToAdd[i];
+			if(entry.state == Entry.PENDING_ADD
+					&& entry.object.readyToDelete())
+				remove(entry.object);
 		}
 	}
 	
 	@Override
 	public Collection<GameObject> update() {
 		Collection<GameObject> updated = super.update();
-		effects.addAll(effectsToAdd);
-		effects.removeAll(effectsToRemove);
-		effectsToAdd.clear();
-		effectsToRemove.clear();
+		for(int i = 0; i < numEntriesToAdd; i++) {
+			Entry entry = entriesToAdd[i];
+			entriesToAdd[i] = null;
+			if(entry.state == Entry.PENDING_ADD) {
+				entry.state = Entry.ADDED;
+				entry.sequence = nextSequence++;
+				layerFor(entry.getLayer()).add(entry);
+				watchForDelete(entry);
+				runner.watchObject(entry.object, entry);
+				if(spatialHash != null)
+					spatialHash.add(entry.sprite);
+				numEffects++;
+			} else if(entry.state == Entry.REMOVED) {
+				//removed before it was added
+				freeEntry(entry);
+			}
+		}
+		numEntriesToAdd = 0;
+		for(int i = 0; i < numEntriesToRemove; i++) {
+			Entry entry = entriesToRemove[i];
+			entriesToRemove[i] = null;
+			//entries that were added again are still ADDED
+			if(entry.state != Entry.PENDING_REMOVE)
+				continue;
+			entry.layer.remove(entry);
+			stopWatchingForDelete(entry);
+			runner.unwatchObject(entry.object, entry);
+			if(spatialHash != null)
+				spatialHash.remove(entry.sprite);
+			entries.remove(entry.object);
+			numEffects--;
+			freeEntry(entry);
+		}
+		numEntriesToRemove = 0;
+		for(int l = 0; l < numLayers; l++)
+			layers[l].compact();
+		if(spatialHash != null)
+			spatialHash.refresh();
 		if(updated != null)
 			return updated;
 		else
 			return null;
 	}
 	
-	public void addEffect(Effect e) {
-		if(e == null)
-			return;
-		if(effects.contains(e))
-			return;
-		if(effectsToAdd.contains(e))
+	private Entry newEntry(GameObject o) {
+		Entry entry;
+		if(numFreeEntries != 0) {
+			entry = freeEntries[--numFreeEntries];
+			freeEntries[numFreeEntries] = null;
+		} else {
+			entry = new Entry();
+		}
+		entry.object = o;
+		entry.state = Entry.PENDING_ADD;
+		entry.index = -1;
+		entry.pollIndex = -1;
+		entry.attached = false;
+		return entry;
+	}
+	
+	private void freeEntry(Entry entry) {
+		entry.object = null;
+		entry.effect = null;
+		entry.sprite = null;
+		entry.state = Entry.REMOVED;
+		if(numFreeEntries == freeEntries.length)
+			freeEntries = Arrays.copyOf(freeEntries, numFreeEntries * 2);
+		freeEntries[numFreeEntries++] = entry;
+	}
+	
+	//find or make the layer with this number
+	private Layer layerFor(int layer) {
+		int low = 0;
+		int high = numLayers;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(layers[mid].layer < layer)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		if(low < numLayers && layers[low].layer == layer)
+			return layers[low];
+		if(numLayers == layers.length)
+			layers = Arrays.copyOf(layers, numLayers * 2);
+		System.arraycopy(layers, low, layers, low + 1, numLayers - low);
+		numLayers++;
+		return layers[low] = new Layer(layer);
+	}
+	
+	//move entries whose layer has changed to their new layer, among the
+	//entries there by the order they were added
+	private void updateLayers() {
+		for(int l = 0; l < numLayers; l++) {
+			Layer layer = layers[l];
+			for(int i = 0; i < layer.size; i++) {
+				Entry entry = layer.entries[i];
+				if(entry == null || entry.getLayer() == layer.layer)
+					continue;
+				layer.remove(entry);
+				if(numMovedEntries == movedEntries.length)
+					movedEntries = Arrays.copyOf(movedEntries,
+							numMovedEntries * 2);
+				movedEntries[numMovedEntries++] = entry;
+			}
+			layer.compact();
+		}
+		for(int i = 0; i < numMovedEntries; i++) {
+			Entry entry = movedEntries[i];
+			movedEntries[i] = null;
+			layerFor(entry.getLayer()).add(entry);
+		}
+		numMovedEntries = 0;
+	}
+	
+	private void watchForDelete(Entry entry) {
+		if(entry.object.addDeleteListener(deleteListener))
 			return;
-		if(effectsToRemove.contains(e)) {
-			effectsToRemove.remove(e);
+		if(numPolledEntries == polledEntries.length)
+			polledEntries = Arrays.copyOf(polledEntries, numPolledEntries * 2);
+		entry.pollIndex = numPolledEntries;
+		polledEntries[numPolledEntries++] = entry;
+	}
+	
+	private void stopWatchingForDelete(Entry entry) {
+		if(entry.pollIndex < 0) {
+			entry.object.removeDeleteListener(deleteListener);
 			return;
 		}
-		effectsToAdd.add(e);
+		Entry last = polledEntries[--numPolledEntries];
+		polledEntries[entry.pollIndex] = last;
+		last.pollIndex = entry.pollIndex;
+		polledEntries[numPolledEntries] = null;
+		entry.pollIndex = -1;
+	}
+	
+	public void addEffect(Effect e) {
+		Entry entry = add(e);
+		if(entry != null)
+			entry.effect = e;
 	}
 	
 	public void addSprite(Sprite s) {
-		Effect e = new SpriteEffect(s);
-		addEffect(e);
-		spriteEffects.put(s, e);
+		Entry entry = add(s);
+		if(entry != null)
+			entry.sprite = s;
+	}
+	
+	//the new entry, or null if the object is already in the group
+	private Entry add(GameObject o) {
+		if(o == null)
+			return null;
+		Entry entry = entries.get(o);
+		if(entry != null) {
+			if(entry.state == Entry.PENDING_REMOVE)
+				entry.state = Entry.ADDED;
+			return null;
+		}
+		entry = newEntry(o);
+		entries.put(o, entry);
+		if(numEntriesToAdd == entriesToAdd.length)
+			entriesToAdd = Arrays.copyOf(entriesToAdd, numEntriesToAdd * 2);
+		entriesToAdd[numEntriesToAdd++] = entry;
+		return entry;
 	}
 	
 	public void removeEffect(Effect e) {
-		if(e == null)
-			return;
-		if(spriteEffects.containsValue(e))
-			spriteEffects.remove(((SpriteEffect)e).s);
-		if(effectsToRemove.contains(e))
+		remove(e);
+	}
+	
+	public void removeSprite(Sprite s) {
+		remove(s);
+	}
+	
+	private void remove(GameObject o) {
+		if(o == null)
 			return;
-		if(effectsToAdd.contains(e)) {
-			effectsToAdd.remove(e);
+		Entry entry = entries.get(o);
+		if(entry == null)
 			return;
+		switch(entry.state) {
+		case Entry.PENDING_ADD:
+			//left in entriesToAdd, but skipped
+			entry.state = Entry.REMOVED;
+			entries.remove(o);
+			break;
+		case Entry.ADDED:
+			entry.state = Entry.PENDING_REMOVE;
+			if(numEntriesToRemove == entriesToRemove.length)
+				entriesToRemove = Arrays.copyOf(entriesToRemove,
+						numEntriesToRemove * 2);
+			entriesToRemove[numEntriesToRemove++] = entry;
+			break;
 		}
-		if(!effects.contains(e))
-			return;
-		effectsToRemove.add(e);
 	}
 	
-	public void removeSprite(Sprite s) {
-		Effect e = spriteEffects.get(s);
-		removeEffect(e);
+	/**
+	 * Check if a sprite or effect is in this group, or waiting to be added.
+	 * @param o the sprite or effect
+	 * @return true if it is in the group
+	 */
+	public boolean contains(GameObject o) {
+		return entries.containsKey(o);
+	}
+	
+	@Override
+	public void reset() {
+		super.reset();
+		clearAll();
 	}
 	
 	public int numEffects() {
-		return effects.size();
+		return numEffects;
+	}
+	
+	/**
+	 * Keep the sprites in this group in a spatial hash, to find the sprites
+	 * near a point. Sprites are added to it and removed from it in the
+	 * group's update step, along with the group. The hash shouldn't be given
+	 * sprites by anything else, since the group clears it in clearAll().
+	 * @param hash the hash to keep the sprites in, or null to stop keeping
+	 * them in one
+	 */
+	public void setSpatialHash(SpatialHash hash) {
+		if(spatialHash != null)
+			spatialHash.clear();
+		spatialHash = hash;
+		if(hash == null)
+			return;
+		for(int l = 0; l < numLayers; l++) {
+			Layer layer = layers[l];
+			for(int i = 0; i < layer.size; i++)
+				hash.add(layer.entries[i].sprite);
+		}
+	}
+	
+	public SpatialHash getSpatialHash() {
+		return spatialHash;
+	}
+	
+	/**
+	 * Set the area that can be seen, in the coordinates the group draws in.
+	 * Sprites whose bounds are entirely outside of it aren't drawn. Sprites
+	 * farther away are drawn closer to the center, so their bounds are
+	 * checked where they are drawn, not where they are.
+	 * @param left the left edge of the visible area
+	 * @param top the top edge of the visible area
+	 * @param right the right edge of the visible area
+	 * @param bottom the bottom edge of the visible area
+	 */
+	public void setView(float left, float top, float right, float bottom) {
+		viewLeft = left;
+		viewTop = top;
+		viewRight = right;
+		viewBottom = bottom;
+		culling = true;
+	}
+	
+	/**
+	 * Stop skipping sprites outside of the view, and draw every sprite.
+	 */
+	public void clearView() {
+		culling = false;
+	}
+	
+	/**
+	 * Get the number of effects and sprites that the last drawSnapshot()
+	 * drew, including those in groups inside this one.
+	 * @return the number drawn
+	 */
+	public int getNumDrawn() {
+		return numDrawn;
+	}
+	
+	/**
+	 * Get the number of sprites that the last drawSnapshot() skipped because
+	 * they were outside of the view.
+	 * @return the number culled
+	 */
+	public int getNumCulled() {
+		return numCulled;
+	}
+	
+	/**
+	 * Get the number of snapshots that publishSnapshot() has taken. This
+	 * should be called on the thread that runs the simulation.
+	 * @return the generation of the last snapshot published, or 0 if none
+	 * have been
+	 */
+	public long getPublishedGeneration() {
+		return publishedGeneration;
+	}
+	
+	/**
+	 * Get the generation of the snapshot that drawSnapshot() last drew. Once
+	 * this is past a generation, no snapshot of that generation or older will
+	 * be drawn again, so nothing that was only in those is still being drawn.
+	 * This can be called from any thread.
+	 * @return the generation of the last snapshot drawn, or 0 if none have
+	 * been
+	 */
+	public long getDrawnGeneration() {
+		return drawnGeneration;
 	}
 	
 	public void clearAll() {
-		effects.clear();
-		effectsToAdd.clear();
-		effectsToRemove.clear();
-		spriteEffects.clear();
+		for(Entry entry : entries.values()) {
+			if(entry.state != Entry.PENDING_ADD) {
+				if(entry.pollIndex < 0)
+					entry.object.removeDeleteListener(deleteListener);
+				runner.unwatchObject(entry.object, entry);
+			}
+			entry.state = Entry.REMOVED;
+		}
+		entries.clear();
+		if(spatialHash != null)
+			spatialHash.clear();
+		//entries still in entriesToAdd are freed when it is cleared below
+		for(int l = 0; l < numLayers; l++) {
+			Layer layer = layers[l];
+			for(int i = 0; i < layer.size; i++)
+				freeEntry(layer.entries[i]);
+			layer.clear();
+		}
+		for(int i = 0; i < numEntriesToAdd; i++) {
+			freeEntry(entriesToAdd[i]);
+			entriesToAdd[i] = null;
+		}
+		numEntriesToAdd = 0;
+		Arrays.fill(entriesToRemove, 0, numEntriesToRemove, null);
+		numEntriesToRemove = 0;
+		Arrays.fill(polledEntries, 0, numPolledEntries, null);
+		numPolledEntries = 0;
+		Arrays.fill(deletedObjects, 0, numDeletedObjects, null);
+		numDeletedObjects = 0;
+		numEffects = 0;
 	}
-
+	
+	/**
+	 * Take a snapshot and draw it right away, on the calling thread. This is
+	 * only for a group that isn't inside another group, and that is drawn on
+	 * the same thread as the simulation. Otherwise, call publishSnapshot() on
+	 * the simulation thread and drawSnapshot() on the thread that draws.
+	 */
 	@Override
 	public void draw(PGraphics g) {
-		//sort by layer -- lower layers are first in the list
-		Collections.sort(effects, new Comparator<Effect>() {
-			@Override
-			public int compare(Effect e1, Effect e2) {
-				return e1.getLayer() - e2.getLayer();
-			}
-		});
+		publishSnapshot();
+		drawSnapshot(g);
+	}
+	
+	/**
+	 * Take a snapshot of the effects to draw, including those of groups inside
+	 * this one, and make it the one that drawSnapshot() draws. This should be
+	 * called on the thread that runs the simulation, after each loop of the
+	 * GameRunner.
+	 */
+	public void publishSnapshot() {
+		RenderSnapshot snapshot = snapshots[backSnapshot];
+		snapshot.clear();
+		snapshot.generation = ++publishedGeneration;
+		addToSnapshot(snapshot);
 		
-		for(Effect e : effects) {
-			//if the effect or sprite has not been initialized, continue
-			if(e instanceof SpriteEffect) {
-				SpriteEffect sprite = (SpriteEffect)e;
-				if(!runner.hasObject(sprite.s))
+		snapshot.interpolation = runner.getInterpolation();
+		snapshot.clockTime = runner.getClock().nanoTime();
+		long tickLength = runner.getTickNanos();
+		float speed = runner.getSpeed();
+		snapshot.realTickLength =
+				tickLength > 0 && speed > 0 ? tickLength / (double)speed : 0;
+		
+		backSnapshot = publishedSnapshot.getAndSet(
+				backSnapshot | SNAPSHOT_FRESH) & SNAPSHOT_INDEX;
+	}
+	
+	//add the entries of this group to a snapshot, lower layers first. Groups
+	//inside this one add theirs between the markers for the group.
+	private void addToSnapshot(RenderSnapshot snapshot) {
+		updateLayers();
+		for(int l = 0; l < numLayers; l++) {
+			Layer layer = layers[l];
+			for(int i = 0; i < layer.size; i++) {
+				Entry entry = layer.entries[i];
+				//if the effect or sprite has not been started, continue
+				if(!entry.attached)
 					continue;
-			} else {
-				if(!runner.hasObject(e))
+				Sprite s = entry.sprite;
+				if(s == null) {
+					snapshot.addEffect(entry.effect);
+				} else if(!s.isShown() || s.getAlpha() <= 0) {
 					continue;
+				} else if(s instanceof SpriteGroup) {
+					snapshot.beginGroup(s);
+					((SpriteGroup)s).addToSnapshot(snapshot);
+					snapshot.endGroup();
+				} else {
+					snapshot.addSprite(s);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Draw the latest snapshot from publishSnapshot(). This should be called
+	 * on the thread that draws.
+	 * @param g the graphics to draw on
+	 */
+	public void drawSnapshot(PGraphics g) {
+		if((publishedSnapshot.get() & SNAPSHOT_FRESH) != 0)
+			frontSnapshot = publishedSnapshot.getAndSet(frontSnapshot)
+					& SNAPSHOT_INDEX;
+		RenderSnapshot snapshot = snapshots[frontSnapshot];
+		drawnGeneration = snapshot.generation;
+		float t = snapshot.blendAmount(runner.getClock().nanoTime());
+		int drawn = 0;
+		int culled = 0;
+		//how many inner groups the current entry is in
+		int nesting = 0;
+		if(culling) {
+			views[0] = viewLeft;
+			views[1] = viewTop;
+			views[2] = viewRight;
+			views[3] = viewBottom;
+		} else {
+			setNoView(0);
+		}
+		
+		for(int i = 0; i < snapshot.size; i++) {
+			byte kind = snapshot.kinds[i];
+			if(kind == RenderSnapshot.EFFECT) {
+				g.pushStyle();
+				snapshot.drawables[i].draw(g);
+				g.popStyle();
+				drawn++;
+				continue;
+			} else if(kind == RenderSnapshot.GROUP_END) {
+				g.popMatrix();
+				g.popStyle();
+				nesting--;
+				continue;
+			}
+			int base = i * RenderSnapshot.STRIDE;
+			float depth = snapshot.transforms[base + RenderSnapshot.DEPTH];
+			float alpha = snapshot.transforms[base + RenderSnapshot.ALPHA];
+			//farther sprites move less, but aren't made smaller
+			float x = snapshot.blend(i, RenderSnapshot.X, t) / depth;
+			float y = snapshot.blend(i, RenderSnapshot.Y, t) / depth;
+			float rotation = snapshot.blend(i, RenderSnapshot.ROTATION, t);
+			float xScale = snapshot.blend(i, RenderSnapshot.X_SCALE, t);
+			float yScale = snapshot.blend(i, RenderSnapshot.Y_SCALE, t);
+			if(kind == RenderSnapshot.SPRITE && isOutsideView(nesting * 4,
+					x, y, rotation, xScale, yScale,
+					snapshot.transforms[base + RenderSnapshot.BOUNDS_WIDTH],
+					snapshot.transforms[base + RenderSnapshot.BOUNDS_HEIGHT])) {
+				culled++;
+				continue;
 			}
-			//draw the effect
 			g.pushStyle();
-			e.draw(g);
+			g.pushMatrix();
+			g.translate(x, y);
+			g.rotate(rotation);
+			g.scale(xScale, yScale);
+			if(kind == RenderSnapshot.GROUP_BEGIN) {
+				//left pushed until the group's GROUP_END
+				nesting++;
+				viewInsideGroup(nesting * 4, x, y, rotation, xScale, yScale);
+				continue;
+			}
+			//TODO: alpha isn't working
+			g.tint(255, alpha * 255);
+			snapshot.drawables[i].draw(g);
+			g.tint(255, 255);
+			g.popMatrix();
 			g.popStyle();
+			drawn++;
 		}
+		numDrawn = drawn;
+		numCulled = culled;
+	}
+	
+	//whether a sprite drawn at (x, y) with the given transform and bounds is
+	//entirely outside of the view that starts at this index of views
+	private boolean isOutsideView(int view, float x, float y, float rotation,
+			float xScale, float yScale, float width, float height) {
+		//a sprite that doesn't know its bounds is always drawn
+		if(width < 0 || height < 0 || Float.isInfinite(views[view]))
+			return false;
+		float halfWidth = Math.abs(width * xScale) / 2;
+		float halfHeight = Math.abs(height * yScale) / 2;
+		//the box around the rotated bounds
+		float extentX = halfWidth;
+		float extentY = halfHeight;
+		if(rotation != 0) {
+			float cos = Math.abs((float)Math.cos(rotation));
+			float sin = Math.abs((float)Math.sin(rotation));
+			extentX = halfWidth * cos + halfHeight * sin;
+			extentY = halfWidth * sin + halfHeight * cos;
+		}
+		return x + extentX < views[view] || x - extentX > views[view + 2]
+				|| y + extentY < views[view + 1] || y - extentY > views[view + 3];
+	}
+	
+	//work out the view inside a group drawn with the given transform, from
+	//the view outside of it, and put it at this index of views. The corners
+	//of the outer view are moved into the group's coordinates, and the box
+	//around them is the view inside.
+	private void viewInsideGroup(int view, float x, float y, float rotation,
+			float xScale, float yScale) {
+		if(view + 4 > views.length)
+			views = Arrays.copyOf(views, views.length * 2);
+		int outer = view - 4;
+		//a group without a view, or scaled to nothing, has no view inside
+		if(Float.isInfinite(views[outer]) || xScale == 0 || yScale == 0) {
+			setNoView(view);
+			return;
+		}
+		float cos = (float)Math.cos(rotation);
+		float sin = (float)Math.sin(rotation);
+		float left = Float.POSITIVE_INFINITY;
+		float top = Float.POSITIVE_INFINITY;
+		float right = Float.NEGATIVE_INFINITY;
+		float bottom = Float.NEGATIVE_INFINITY;
+		for(int corner = 0; corner < 4; corner++) {
+			float dx = views[outer + (corner & 1) * 2] - x;
+			float dy = views[outer + 1 + (corner & 2)] - y;
+			//undo the rotation, then the scale
+			float innerX = (dx * cos + dy * sin) / xScale;
+			float innerY = (dy * cos - dx * sin) / yScale;
+			left = Math.min(left, innerX);
+			top = Math.min(top, innerY);
+			right = Math.max(right, innerX);
+			bottom = Math.max(bottom, innerY);
+		}
+		views[view] = left;
+		views[view + 1] = top;
+		views[view + 2] = right;
+		views[view + 3] = bottom;
+	}
+	
+	//mark the view at this index of views as covering everything
+	private void setNoView(int view) {
+		views[view] = Float.NEGATIVE_INFINITY;
+		views[view + 1] = Float.NEGATIVE_INFINITY;
+		views[view + 2] = Float.POSITIVE_INFINITY;
+		views[view + 3] = Float.POSITIVE_INFINITY;
 	}
 
 }
@@ -0,0 +1,225 @@
+package engine.graphics;
+
+import java.util.Collection;
+
+import engine.*;
+
+/**
+ * A sprite whose values are kept in a TransformStore, instead of in fields of
+ * its own. It works like a PositionableSprite: set the next values while
+ * thinking, and the current values are read by everything else. The store
+ * copies the values of all its sprites at once, which is faster than
+ * PositionableSprite when there are many thousands of sprites.
+ * 
+ * The sprite's id is freed when it is deleted, and it gets a new one if it is
+ * reset and used again.
+ */
+public abstract class StoredSprite implements Sprite, Poolable {
+	protected final TransformStore store;
+	private int id;
+	private boolean freed;
+	private boolean cReadyToDelete, readyToDelete;
+	private final DeleteNotifier deleteNotifier;
+	
+	protected StoredSprite(TransformStore store) {
+		this.store = store;
+		id = store.allocate();
+		freed = false;
+		readyToDelete = cReadyToDelete = false;
+		deleteNotifier = new DeleteNotifier(this);
+	}
+	
+	/**
+	 * Set every value back to its default, and forget the delete listeners.
+	 * Subclasses that set values in their constructors should override this
+	 * to set them again.
+	 */
+	@Override
+	public void reset() {
+		if(freed) {
+			id = store.allocate();
+			freed = false;
+		} else {
+			store.resetValues(id);
+		}
+		readyToDelete = cReadyToDelete = false;
+		deleteNotifier.reset();
+	}
+	
+	/**
+	 * @return the id of this sprite's values in the store
+	 */
+	protected int getId() {
+		return id;
+	}
+	
+	@Override
+	public Collection<GameObject> update() {
+		cReadyToDelete = readyToDelete;
+		if(cReadyToDelete && !freed) {
+			store.free(id);
+			freed = true;
+			deleteNotifier.notifyDeleted();
+		}
+		return null;
+	}
+	
+	protected void delete() {
+		readyToDelete = true;
+	}
+	
+	@Override
+	public boolean readyToDelete() {
+		return cReadyToDelete;
+	}
+	
+	@Override
+	public boolean addDeleteListener(DeleteListener l) {
+		deleteNotifier.add(l);
+		return true;
+	}
+	
+	@Override
+	public void removeDeleteListener(DeleteListener l) {
+		deleteNotifier.remove(l);
+	}
+	
+	/* Next values, changed while thinking */
+	
+	protected void setX(float x) {
+		store.set(id, TransformStore.X, x);
+	}
+	
+	protected void setY(float y) {
+		store.set(id, TransformStore.Y, y);
+	}
+	
+	protected void setPosition(float x, float y) {
+		store.set(id, TransformStore.X, x);
+		store.set(id, TransformStore.Y, y);
+	}
+	
+	protected void setRotation(float rotation) {
+		store.set(id, TransformStore.ROTATION, rotation);
+	}
+	
+	protected void setScale(float xScale, float yScale) {
+		store.set(id, TransformStore.X_SCALE, xScale);
+		store.set(id, TransformStore.Y_SCALE, yScale);
+	}
+	
+	protected void setVelocity(float xVelocity, float yVelocity) {
+		store.set(id, TransformStore.X_VELOCITY, xVelocity);
+		store.set(id, TransformStore.Y_VELOCITY, yVelocity);
+	}
+	
+	protected void setDepth(float depth) {
+		store.set(id, TransformStore.DEPTH, depth);
+	}
+	
+	protected void setAlpha(float alpha) {
+		store.set(id, TransformStore.ALPHA, alpha);
+	}
+	
+	protected void setLayer(int layer) {
+		store.setLayer(id, layer);
+	}
+	
+	protected void setShown(boolean shown) {
+		store.setShown(id, shown);
+	}
+	
+	protected float getNextX() {
+		return store.getNext(id, TransformStore.X);
+	}
+	
+	protected float getNextY() {
+		return store.getNext(id, TransformStore.Y);
+	}
+	
+	protected float getNextRotation() {
+		return store.getNext(id, TransformStore.ROTATION);
+	}
+	
+	/* Current values */
+	
+	@Override
+	public boolean isShown() {
+		return store.isShown(id);
+	}
+	
+	@Override
+	public int getLayer() {
+		return store.getLayer(id);
+	}
+	
+	@Override
+	public float getX() {
+		return store.get(id, TransformStore.X);
+	}
+	
+	@Override
+	public float getY() {
+		return store.get(id, TransformStore.Y);
+	}
+	
+	@Override
+	public float getRotation() {
+		return store.get(id, TransformStore.ROTATION);
+	}
+	
+	@Override
+	public float getXScale() {
+		return store.get(id, TransformStore.X_SCALE);
+	}
+	
+	@Override
+	public float getYScale() {
+		return store.get(id, TransformStore.Y_SCALE);
+	}
+	
+	@Override
+	public float getX(float t) {
+		return store.get(id, TransformStore.X, t);
+	}
+	
+	@Override
+	public float getY(float t) {
+		return store.get(id, TransformStore.Y, t);
+	}
+	
+	@Override
+	public float getRotation(float t) {
+		return store.get(id, TransformStore.ROTATION, t);
+	}
+	
+	@Override
+	public float getXScale(float t) {
+		return store.get(id, TransformStore.X_SCALE, t);
+	}
+	
+	@Override
+	public float getYScale(float t) {
+		return store.get(id, TransformStore.Y_SCALE, t);
+	}
+	
+	@Override
+	public float getXVelocity() {
+		return store.get(id, TransformStore.X_VELOCITY);
+	}
+	
+	@Override
+	public float getYVelocity() {
+		return store.get(id, TransformStore.Y_VELOCITY);
+	}
+	
+	@Override
+	public float getDepth() {
+		return store.get(id, TransformStore.DEPTH);
+	}
+	
+	@Override
+	public float getAlpha() {
+		return store.get(id, TransformStore.ALPHA);
+	}
+}
@@ -0,0 +1,299 @@
+package engine.graphics;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import engine.*;
+
+/**
+ * Keeps the positions, rotations, scales, velocities, depths, alphas, layers
+ * and visibility of many StoredSprites in primitive arrays, indexed by an id
+ * for each sprite. Like PositionableSprite, each value has a next copy that
+ * sprites change while thinking, a current copy that is read, and a previous
+ * copy for blending with a fixed timestep. Instead of each sprite copying its
+ * own values, the store copies every value at once in its update step, with
+ * one array copy for each kind of value.
+ * 
+ * The store is a GameObject, and has to be added to the GameRunner along with
+ * its sprites. Values that a sprite changes in update() are copied in the next
+ * step. Ids are only given out and freed on the simulation thread, not during
+ * a parallel think step.
+ */
+public class TransformStore implements GameObject {
+	//float values, each in its own block of the arrays
+	public static final int X = 0, Y = 1, ROTATION = 2, X_SCALE = 3,
+			Y_SCALE = 4;
+	public static final int X_VELOCITY = 5, Y_VELOCITY = 6, DEPTH = 7,
+			ALPHA = 8;
+	//values that are blended between the previous and current step come first
+	private static final int NUM_BLENDED = 5;
+	private static final int NUM_VALUES = 9;
+	private static final float[] DEFAULTS = {0, 0, 0, 1, 1, 0, 0, 1, 1};
+	//steps to wait before giving out a freed id, so a snapshot taken before
+	//its sprite was removed still reads the old values
+	private static final int FREE_STEPS = 2;
+	
+	private final GameRunner runner;
+	private int capacity;
+	//one past the highest id given out
+	private int size;
+	
+	//value v of sprite id is at [v * capacity + id]
+	private float[] next;
+	private float[] current;
+	private float[] previous;
+	private int[] nextLayer;
+	private int[] currentLayer;
+	private boolean[] nextShown;
+	private boolean[] currentShown;
+	
+	//ids given out since the last update. Their values haven't been copied
+	//yet, so changes go to every copy, like values set before a
+	//PositionableSprite's first update.
+	private boolean[] fresh;
+	private int[] freshIds;
+	private int numFresh;
+	
+	//freed ids, in the order they were freed, with the step they were freed in
+	private int[] freedIds;
+	private long[] freedSteps;
+	private int firstFreed;
+	private int numFreed;
+	
+	public TransformStore(GameRunner runner, int capacity) {
+		this.runner = runner;
+		this.capacity = Math.max(capacity, 1);
+		size = 0;
+		next = new float[NUM_VALUES * this.capacity];
+		current = new float[NUM_VALUES * this.capacity];
+		previous = new float[NUM_VALUES * this.capacity];
+		nextLayer = new int[this.capacity];
+		currentLayer = new int[this.capacity];
+		nextShown = new boolean[this.capacity];
+		currentShown = new boolean[this.capacity];
+		fresh = new boolean[this.capacity];
+		freshIds = new int[16];
+		numFresh = 0;
+		freedIds = new int[16];
+		freedSteps = new long[16];
+		firstFreed = 0;
+		numFreed = 0;
+	}
+	
+	/**
+	 * Give out an id for a new sprite, with every value set to its default.
+	 * @return the id
+	 */
+	public int allocate() {
+		int id;
+		if(numFreed != 0 && canReuse(freedSteps[firstFreed])) {
+			id = freedIds[firstFreed];
+			firstFreed = (firstFreed + 1) % freedIds.length;
+			numFreed--;
+		} else {
+			if(size == capacity)
+				grow(capacity * 2);
+			id = size++;
+		}
+		resetValues(id);
+		return id;
+	}
+	
+	private boolean canReuse(long freedStep) {
+		long step = runner.getStepCount();
+		//a smaller step count means the runner was started again
+		return step < freedStep || step - freedStep >= FREE_STEPS;
+	}
+	
+	/**
+	 * Set every value of a sprite back to its default.
+	 * @param id the id of the sprite
+	 */
+	public void resetValues(int id) {
+		for(int v = 0; v < NUM_VALUES; v++) {
+			int i = v * capacity + id;
+			next[i] = current[i] = previous[i] = DEFAULTS[v];
+		}
+		nextLayer[id] = currentLayer[id] = 0;
+		nextShown[id] = currentShown[id] = true;
+		if(!fresh[id]) {
+			fresh[id] = true;
+			if(numFresh == freshIds.length)
+				freshIds = Arrays.copyOf(freshIds, numFresh * 2);
+			freshIds[numFresh++] = id;
+		}
+	}
+	
+	/**
+	 * Give an id back, once its sprite is deleted. It is given out again a
+	 * few steps later.
+	 * @param id the id to free
+	 */
+	public void free(int id) {
+		if(numFreed == freedIds.length) {
+			//unwrap the ring, so it can grow at the end
+			int[] ids = new int[numFreed * 2];
+			long[] steps = new long[numFreed * 2];
+			for(int i = 0; i < numFreed; i++) {
+				int index = (firstFreed + i) % freedIds.length;
+				ids[i] = freedIds[index];
+				steps[i] = freedSteps[index];
+			}
+			freedIds = ids;
+			freedSteps = steps;
+			firstFreed = 0;
+		}
+		int index = (firstFreed + numFreed) % freedIds.length;
+		freedIds[index] = id;
+		freedSteps[index] = runner.getStepCount();
+		numFreed++;
+	}
+	
+	/**
+	 * Forget every id, such as when the game is restarted.
+	 */
+	public void clear() {
+		size = 0;
+		Arrays.fill(fresh, false);
+		numFresh = 0;
+		firstFreed = 0;
+		numFreed = 0;
+	}
+	
+	private void grow(int newCapacity) {
+		next = growValues(next, newCapacity);
+		current = growValues(current, newCapacity);
+		previous = growValues(previous, newCapacity);
+		nextLayer = Arrays.copyOf(nextLayer, newCapacity);
+		currentLayer = Arrays.copyOf(currentLayer, newCapacity);
+		nextShown = Arrays.copyOf(nextShown, newCapacity);
+		currentShown = Arrays.copyOf(currentShown, newCapacity);
+		fresh = Arrays.copyOf(fresh, newCapacity);
+		capacity = newCapacity;
+	}
+	
+	private float[] growValues(float[] values, int newCapacity) {
+		float[] grown = new float[NUM_VALUES * newCapacity];
+		for(int v = 0; v < NUM_VALUES; v++)
+			System.arraycopy(values, v * capacity, grown, v * newCapacity,
+					size);
+		return grown;
+	}
+	
+	/**
+	 * @return the number of ids given out and not freed
+	 */
+	public int numSprites() {
+		return size - numFreed;
+	}
+	
+	@Override
+	public void start(int time) { }
+	
+	@Override
+	public void think(int currentTime, int elapsedTime) { }
+	
+	/**
+	 * Shift the next values of every sprite to the current values, and the
+	 * current values to the previous values.
+	 */
+	@Override
+	public Collection<GameObject> update() {
+		for(int v = 0; v < NUM_BLENDED; v++)
+			System.arraycopy(current, v * capacity, previous, v * capacity,
+					size);
+		for(int v = 0; v < NUM_VALUES; v++)
+			System.arraycopy(next, v * capacity, current, v * capacity, size);
+		System.arraycopy(nextLayer, 0, currentLayer, 0, size);
+		System.arraycopy(nextShown, 0, currentShown, 0, size);
+		//new sprites start where they were put, without blending from their
+		//old values
+		for(int i = 0; i < numFresh; i++) {
+			int id = freshIds[i];
+			fresh[id] = false;
+			for(int v = 0; v < NUM_BLENDED; v++)
+				previous[v * capacity + id] = current[v * capacity + id];
+		}
+		numFresh = 0;
+		return null;
+	}
+	
+	@Override
+	public boolean readyToDelete() {
+		return false;
+	}
+	
+	/**
+	 * Set the next value of a sprite.
+	 * @param id the id of the sprite
+	 * @param value X, Y, ROTATION, X_SCALE, Y_SCALE, X_VELOCITY, Y_VELOCITY,
+	 * DEPTH or ALPHA
+	 * @param f the new value
+	 */
+	public void set(int id, int value, float f) {
+		int i = value * capacity + id;
+		next[i] = f;
+		if(fresh[id])
+			current[i] = previous[i] = f;
+	}
+	
+	/**
+	 * Get the next value of a sprite, as it was last set.
+	 * @param id the id of the sprite
+	 * @param value X, Y, ROTATION, etc.
+	 * @return the next value
+	 */
+	public float getNext(int id, int value) {
+		return next[value * capacity + id];
+	}
+	
+	/**
+	 * Get the current value of a sprite, from the last update.
+	 * @param id the id of the sprite
+	 * @param value X, Y, ROTATION, etc.
+	 * @return the current value
+	 */
+	public float get(int id, int value) {
+		return current[value * capacity + id];
+	}
+	
+	/**
+	 * Get a value blended between the previous and current update.
+	 * @param id the id of the sprite
+	 * @param value X, Y, ROTATION, X_SCALE or Y_SCALE
+	 * @param t the blend amount, from 0 (previous) to 1 (current)
+	 * @return the blended value
+	 */
+	public float get(int id, int value, float t) {
+		int i = value * capacity + id;
+		return previous[i] + (current[i] - previous[i]) * t;
+	}
+	
+	public void setLayer(int id, int layer) {
+		nextLayer[id] = layer;
+		if(fresh[id])
+			currentLayer[id] = layer;
+	}
+	
+	public int getNextLayer(int id) {
+		return nextLayer[id];
+	}
+	
+	public int getLayer(int id) {
+		return currentLayer[id];
+	}
+	
+	public void setShown(int id, boolean shown) {
+		nextShown[id] = shown;
+		if(fresh[id])
+			currentShown[id] = shown;
+	}
+	
+	public boolean isNextShown(int id) {
+		return nextShown[id];
+	}
+	
+	public boolean isShown(int id) {
+		return currentShown[id];
+	}
+}
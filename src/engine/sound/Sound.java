@@ -2,13 +2,17 @@ package engine.sound;
 
 import engine.*;
 import processing.sound.*;
+import java.io.IOException;
 import java.nio.file.*;
 import java.util.Collection;
+import javax.sound.sampled.*;
 
 /**
  * A wrapper for SoundFile, providing more control and hiding some of
  * SoundFile's strange bugs. Sound is NOT thread-safe!
  * Sounds add themselves to the GameRunner, so you don't have to.
+ * When running headless, Sounds keep track of their time like normal, but
+ * don't make any noise.
  * @author jacob
  *
  */
@@ -17,6 +21,7 @@ public class Sound implements GameObject {
 	
 	// documentation for SoundFile is here:
 	// https://processing.org/reference/libraries/sound/SoundFile.html
+	// null if the sound is silent
 	private final SoundFile sound;
 	
 	private enum ActionWhenFinished {
@@ -33,6 +38,7 @@ public class Sound implements GameObject {
 	private ActionWhenFinished finishedAction;
 	
 	private boolean delete, cDelete;
+	private final DeleteNotifier deleteNotifier;
 	
 	/**
 	 * Construct a Sound using the audio file at the specified path. Sounds
@@ -43,11 +49,17 @@ public class Sound implements GameObject {
 	public Sound(GameRunner runner, Path file) {
 		run = runner;
 		runner.addObject(this);
-		sound = new SoundFile(runner.getApplet(), file.toString());
+		GameApplet applet = runner.getApplet();
+		if(applet != null && !applet.isHeadless()) {
+			sound = new SoundFile(applet, file.toString());
+			duration = sound.duration();
+		} else {
+			sound = null;
+			duration = readDuration(file);
+		}
 		
 		delete = cDelete = false;
-		
-		duration = sound.duration();
+		deleteNotifier = new DeleteNotifier(this);
 		
 		cueTime = 0;
 		startTime = runner.getTime();
@@ -57,6 +69,23 @@ public class Sound implements GameObject {
 		finishedAction = ActionWhenFinished.STOP;
 	}
 
+	/**
+	 * Find the length of an audio file without playing it.
+	 * @return the length in seconds, or 0 if the file can't be read
+	 */
+	private static float readDuration(Path file) {
+		try {
+			AudioFileFormat format =
+					AudioSystem.getAudioFileFormat(file.toFile());
+			float frameRate = format.getFormat().getFrameRate();
+			if(format.getFrameLength() <= 0 || frameRate <= 0)
+				return 0;
+			return format.getFrameLength() / frameRate;
+		} catch(IOException | UnsupportedAudioFileException e) {
+			return 0;
+		}
+	}
+	
 	@Override
 	public void start(int time) { }
 
@@ -66,9 +95,12 @@ public class Sound implements GameObject {
 	@Override
 	public Collection<GameObject> update() {
 		cDelete = delete;
+		if(cDelete)
+			deleteNotifier.notifyDeleted();
 		
-		//if at the end of the SoundFile
-		if(isPlaying && getTime() > duration) {
+		//if at the end of the SoundFile. Silent sounds of unknown length play
+		//forever.
+		if(isPlaying && duration > 0 && getTime() > duration) {
 			isPlaying = false;
 			switch(finishedAction) {
 			case STOP:
@@ -83,6 +115,14 @@ public class Sound implements GameObject {
 			}
 		}
 		
+		// there is nothing to do until the sound ends, or until it is
+		// played, moved, or deleted (which wake it up again)
+		if(isPlaying && rate > 0 && duration > 0)
+			run.sleepUntil(this,
+					startTime + (int)(duration / rate * 1000) + 1);
+		else if(!delete)
+			run.sleep(this);
+		
 		return null;
 	}
 
@@ -91,9 +131,21 @@ public class Sound implements GameObject {
 		return cDelete;
 	}
 	
+	@Override
+	public boolean addDeleteListener(DeleteListener l) {
+		deleteNotifier.add(l);
+		return true;
+	}
+	
+	@Override
+	public void removeDeleteListener(DeleteListener l) {
+		deleteNotifier.remove(l);
+	}
+	
 	public void delete() {
 		delete = true;
 		stop();
+		run.wake(this);
 	}
 	
 	
@@ -105,8 +157,10 @@ public class Sound implements GameObject {
 	public void play() {
 		if(!isPlaying) {
 			startTime = run.getTime();
-			sound.jump(cueTime);
+			if(sound != null)
+				sound.jump(cueTime);
 			isPlaying = true;
+			run.wake(this);
 		}
 	}
 	
@@ -116,7 +170,8 @@ public class Sound implements GameObject {
 	public void pause() {
 		if(isPlaying) {
 			cueTime = getTime();
-			sound.stop();
+			if(sound != null)
+				sound.stop();
 			isPlaying = false;
 		}
 	}
@@ -208,7 +263,9 @@ public class Sound implements GameObject {
 		cueTime = time;
 		if(isPlaying) {
 			startTime = run.getTime() - (int)(time / rate * 1000);
-			sound.jump(time);
+			if(sound != null)
+				sound.jump(time);
+			run.wake(this);
 		}
 	}
 	
@@ -238,7 +295,8 @@ public class Sound implements GameObject {
 		// jumping causes short breaks in the sound so it should be avoided.
 		if(rate != this.rate) {
 			float time = getTime();
-			sound.rate(rate);
+			if(sound != null)
+				sound.rate(rate);
 			this.rate = rate;
 			jump(time); // sometimes setting the rate of a sound can restart it
 		}
@@ -258,7 +316,8 @@ public class Sound implements GameObject {
 	 * @param volume the volume; must be 0.0 to 1.0 (silent to full volume).
 	 */
 	public void setVolume(float volume) {
-		sound.amp(volume);
+		if(sound != null)
+			sound.amp(volume);
 		this.volume = volume;
 	}
 	
@@ -276,6 +335,7 @@ public class Sound implements GameObject {
 	 * right channel, 0.0 plays equally in both channels.
 	 */
 	public void pan(float pan) {
-		sound.pan(pan);
+		if(sound != null)
+			sound.pan(pan);
 	}
 }